@@ -36,8 +36,12 @@ public class Assign {
   private final Users users;
 
   public Assign(final Settings settings, final UserFinder userFinder) {
+    this(settings, new Users(userFinder, settings));
+  }
+
+  public Assign(final Settings settings, final Users users) {
     this.settings = settings;
-    this.users = new Users(userFinder, settings);
+    this.users = users;
   }
 
   public User getAssignee(final String scmAuthor) throws IssueAssignPluginException {
@@ -51,7 +55,7 @@ public class Assign {
     }
 
     try {
-      sonarUser = this.users.getSonarUser(scmAuthor);
+      sonarUser = this.users.getSonarUser(scmAuthor, this.settings);
       return sonarUser;
     } catch (final SonarUserNotFoundException e) {
       LOG.debug("Sonar user not found: " + scmAuthor);
@@ -83,6 +87,6 @@ public class Assign {
 
   private User getConfiguredSonarUser(final String key) throws IssueAssignPluginException {
     final String configuredUser = PluginUtils.getConfiguredSetting(settings, key);
-    return this.users.getSonarUser(configuredUser);
+    return this.users.getSonarUser(configuredUser, this.settings);
   }
 }
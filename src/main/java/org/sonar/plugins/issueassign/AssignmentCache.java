@@ -0,0 +1,205 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.apache.commons.lang.StringUtils;
+import org.picocontainer.Startable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.config.Settings;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.resources.Project;
+import org.sonar.api.user.User;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assignment decisions of the previous analysis, stored per issue in a file of the configured directory.  Decisions
+ * are reused for files the batch reports as unchanged, so that their issues need neither blame data nor user lookups.
+ */
+public class AssignmentCache implements BatchExtension, Startable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AssignmentCache.class);
+  private static final String FINGERPRINT_PREFIX = "#";
+  private static final String[] DECISION_PROPERTIES = {
+    IssueAssignPlugin.PROPERTY_DEFAULT_ASSIGNEE,
+    IssueAssignPlugin.PROPERTY_OVERRIDE_ASSIGNEE,
+    IssueAssignPlugin.PROPERTY_ASSIGN_TO_LAST_COMMITTER,
+    IssueAssignPlugin.PROPERTY_ASSIGN_BLAMELESS_TO_LAST_COMMITTER,
+    IssueAssignPlugin.PROPERTY_ASSIGN_AMBIGUOUS_TO_TOP_CONTRIBUTOR,
+    IssueAssignPlugin.PROPERTY_BLAME_LINE_WINDOW,
+    IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME,
+    IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_RULES,
+    IssueAssignPlugin.PROPERTY_GIT_BLAME_FALLBACK
+  };
+
+  private final Settings settings;
+  private final FileSystem fileSystem;
+  private final Project module;
+  private final ResourceFinder resourceFinder;
+  private final Map<String, Decision> previousDecisions = new HashMap<String, Decision>();
+  private final Map<String, Decision> decisions = new HashMap<String, Decision>();
+  // component key -> whether the file is unchanged since the previous analysis
+  private final Map<String, Boolean> unchangedFiles = new HashMap<String, Boolean>();
+  private CacheFile file;
+
+  public AssignmentCache(final Settings settings, final FileSystem fileSystem, final Project module,
+    final ResourceFinder resourceFinder) {
+    this.settings = settings;
+    this.fileSystem = fileSystem;
+    this.module = module;
+    this.resourceFinder = resourceFinder;
+  }
+
+  @Override
+  public void start() {
+    final String directory = this.settings.getString(IssueAssignPlugin.PROPERTY_ASSIGNMENT_CACHE_DIR);
+    if (StringUtils.isBlank(directory) || !this.settings.getBoolean(IssueAssignPlugin.PROPERTY_ENABLED)) {
+      return;
+    }
+    this.file = new CacheFile(new File(this.fileSystem.resolvePath(directory),
+      this.module.getEffectiveKey().replaceAll("[^\\w.-]", "_") + ".txt"), FINGERPRINT_PREFIX + this.fingerprint());
+    if (this.file.exists()) {
+      this.load();
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (this.file != null) {
+      this.save();
+    }
+  }
+
+  /**
+   * Returns the decision taken for the issue by the previous analysis if its file did not change since, otherwise null.
+   */
+  public Decision lookup(final Issue issue) {
+    final Decision decision = this.previousDecisions.get(issue.key());
+    if (decision == null || !this.isUnchanged(issue.componentKey())) {
+      return null;
+    }
+    LOG.debug("Reusing the previous decision for issue {}", issue.key());
+    this.decisions.put(issue.key(), decision);
+    return decision;
+  }
+
+  /**
+   * Records the decision taken for an issue, with a null commit time when it was not needed and a null assignee when
+   * the issue was not assigned.
+   */
+  public void record(final Issue issue, final Long commitTime, final User assignee) {
+    if (this.file != null) {
+      this.decisions.put(issue.key(), new Decision(commitTime,
+        assignee == null ? null : assignee.login(), assignee == null ? null : assignee.name()));
+    }
+  }
+
+  private boolean isUnchanged(final String componentKey) {
+    Boolean unchanged = this.unchangedFiles.get(componentKey);
+    if (unchanged == null) {
+      final InputFile inputFile = this.resourceFinder.findInputFile(componentKey);
+      unchanged = inputFile != null && inputFile.status() == InputFile.Status.SAME;
+      this.unchangedFiles.put(componentKey, unchanged);
+    }
+    return unchanged;
+  }
+
+  private String fingerprint() {
+    final StringBuilder values = new StringBuilder();
+    for (final String property : DECISION_PROPERTIES) {
+      values.append(property).append('=').append(this.settings.getString(property)).append(';');
+    }
+    return Integer.toHexString(values.toString().hashCode());
+  }
+
+  private void load() {
+    try {
+      final List<String[]> records = this.file.read(4);
+      if (records == null) {
+        LOG.info("Issue assignment settings changed, ignoring the previous decisions");
+        return;
+      }
+      for (final String[] fields : records) {
+        final String commitTime = CacheFile.decode(fields[1]);
+        this.previousDecisions.put(fields[0], new Decision(commitTime == null ? null : Long.valueOf(commitTime),
+          CacheFile.decode(fields[2]), CacheFile.decode(fields[3])));
+      }
+      LOG.debug("Loaded {} previous assignment decisions from {}", this.previousDecisions.size(), this.file);
+    } catch (final IOException e) {
+      LOG.warn("Unable to read the previous assignment decisions from " + this.file, e);
+      this.previousDecisions.clear();
+    } catch (final NumberFormatException e) {
+      LOG.warn("Corrupt assignment decisions in " + this.file + ", ignoring them");
+      this.previousDecisions.clear();
+    }
+  }
+
+  private void save() {
+    final List<String[]> records = new ArrayList<String[]>(this.decisions.size());
+    for (final Map.Entry<String, Decision> entry : this.decisions.entrySet()) {
+      final Decision decision = entry.getValue();
+      records.add(new String[] {entry.getKey(),
+        CacheFile.encode(decision.commitTime == null ? null : decision.commitTime.toString()),
+        CacheFile.encode(decision.assigneeLogin), CacheFile.encode(decision.assigneeName)});
+    }
+    try {
+      this.file.write(records);
+      LOG.debug("Saved {} assignment decisions to {}", records.size(), this.file);
+    } catch (final IOException e) {
+      LOG.warn("Unable to save the assignment decisions to " + this.file, e);
+    }
+  }
+
+  public static final class Decision {
+
+    private final Long commitTime;
+    private final String assigneeLogin;
+    private final String assigneeName;
+
+    Decision(final Long commitTime, final String assigneeLogin, final String assigneeName) {
+      this.commitTime = commitTime;
+      this.assigneeLogin = assigneeLogin;
+      this.assigneeName = assigneeName;
+    }
+
+    /**
+     * Commit time the issue was blamed on, or null if it was not needed.
+     */
+    public Long getCommitTime() {
+      return this.commitTime;
+    }
+
+    /**
+     * The user the issue was assigned to, or null if it was not assigned.
+     */
+    public User getAssignee() {
+      return this.assigneeLogin == null ? null : new CachedUser(this.assigneeLogin, this.assigneeName);
+    }
+  }
+}
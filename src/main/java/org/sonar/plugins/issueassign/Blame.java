@@ -21,30 +21,51 @@ package org.sonar.plugins.issueassign;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
 import org.sonar.api.config.Settings;
 import org.sonar.api.issue.Issue;
 import org.sonar.api.resources.Resource;
 import org.sonar.plugins.issueassign.exception.IssueAssignPluginException;
 import org.sonar.plugins.issueassign.exception.MissingScmMeasureDataException;
 import org.sonar.plugins.issueassign.exception.NoUniqueAuthorForLastCommitException;
-import org.sonar.plugins.issueassign.exception.ResourceNotFoundException;
 import org.sonar.plugins.issueassign.measures.MeasuresFinder;
+import org.sonar.plugins.issueassign.measures.LastCommitSummary;
+import org.sonar.plugins.issueassign.measures.ScmDataSource;
 import org.sonar.plugins.issueassign.measures.ScmMeasures;
+import org.sonar.plugins.issueassign.measures.ScmSpillStore;
 
-import java.util.*;
-
-public class Blame {
+public class Blame implements BatchExtension {
 
   private static final Logger LOG = LoggerFactory.getLogger(Blame.class);
-  private Map<String, ScmMeasures> resourceMeasuresMap = new HashMap<String, ScmMeasures>();
+  private final BlameCache blameCache;
   private final ResourceFinder resourceFinder;
-  private final MeasuresFinder measuresFinder;
+  private final ScmDataSource dataSource;
   private final Settings settings;
+  private final BlameDecoder decoder;
+  private final GitBlameFallback gitBlameFallback;
+
+  public Blame(final ResourceFinder resourceFinder, final ScmDataSource dataSource, final Settings settings) {
+    this(resourceFinder, dataSource, settings, new BlameDecoder(settings), null, null);
+  }
 
-  public Blame(final ResourceFinder resourceFinder, final MeasuresFinder measuresFinder, final Settings settings) {
+  /**
+   * Uses the first data source registered besides the default MeasuresFinder, if any.
+   */
+  public Blame(final ResourceFinder resourceFinder, final MeasuresFinder measuresFinder, final ScmDataSource[] dataSources,
+    final Settings settings, final BlameDecoder decoder, final ScmSpillStore spillStore,
+    final GitBlameFallback gitBlameFallback) {
+    this(resourceFinder, selectDataSource(measuresFinder, dataSources), settings, decoder, spillStore, gitBlameFallback);
+  }
+
+  private Blame(final ResourceFinder resourceFinder, final ScmDataSource dataSource, final Settings settings,
+    final BlameDecoder decoder, final ScmSpillStore spillStore, final GitBlameFallback gitBlameFallback) {
     this.resourceFinder = resourceFinder;
-    this.measuresFinder = measuresFinder;
+    this.dataSource = dataSource;
     this.settings = settings;
+    this.decoder = decoder;
+    this.gitBlameFallback = gitBlameFallback != null && gitBlameFallback.isEnabled() ? gitBlameFallback : null;
+    this.blameCache = new BlameCache(getCacheSize(settings),
+      spillStore != null && spillStore.isEnabled() ? spillStore : null);
   }
 
   public String getScmAuthorForIssue(final Issue issue, final boolean assignToLastCommitter) throws IssueAssignPluginException {
@@ -55,47 +76,59 @@ public class Blame {
     return this.getAuthorForIssueLine(issue);
   }
 
-  public Date getCommitDateForIssue(final Issue issue) throws IssueAssignPluginException {
-     Date commitDate;
-     if (issue.line() == null) {
-         commitDate = getLastCommitDate(issue.componentKey());
-         LOG.debug("Commit date for issue {} (file {}) is {}", issue.key(), issue.componentKey(), commitDate.toString());
-     } else {
-         commitDate = getMeasuresForResource(issue.componentKey()).getLastCommitsByLine().get(issue.line());
-         LOG.debug("Commit date for issue {} (file {} line {}) is {}", issue.key(), issue.componentKey(),issue.line(),commitDate.toString());
-     }
-    return commitDate;
+  public long getCommitTimeForIssue(final Issue issue) throws IssueAssignPluginException {
+    final long commitTime;
+    if (issue.line() == null || !this.supports(ScmDataSource.Capability.LINE)) {
+      commitTime = getLastCommitTime(issue.componentKey());
+      LOG.debug("Commit time for issue {} (file {}) is {}", issue.key(), issue.componentKey(), commitTime);
+    } else {
+      final ScmMeasures scmMeasures;
+      try {
+        scmMeasures = getScmMeasuresForResource(issue.componentKey());
+      } catch (final MissingScmMeasureDataException e) {
+        return this.getFallbackLine(issue.componentKey(), issue.line(), e).getCommitTime();
+      }
+      final int blamedLine = this.getBlamedLine(scmMeasures, issue.line());
+      commitTime = scmMeasures.getLastCommitTime(blamedLine);
+      if (commitTime == ScmMeasures.NO_COMMIT_TIME) {
+        throw new MissingScmMeasureDataException();
+      }
+      LOG.debug("Commit time for issue {} (file {} line {}) is {}", issue.key(), issue.componentKey(), blamedLine, commitTime);
+    }
+    return commitTime;
   }
 
   private String getLastCommitterForResource(final String resourceKey) throws IssueAssignPluginException {
-    final Date lastCommitDate = this.getLastCommitDate(resourceKey);
-    final List<Integer> linesFromLastCommit = this.getLinesFromLastCommit(resourceKey, lastCommitDate);
-    final ScmMeasures scmMeasures = this.getMeasuresForResource(resourceKey);
-
-    String author = null;
-
-    for (final Integer line : linesFromLastCommit) {
-      if (author == null) {
-        author = scmMeasures.getAuthorsByLine().get(line);
-      } else {
-        final String nextAuthor = scmMeasures.getAuthorsByLine().get(line);
-        if (!nextAuthor.equals(author)) {
-          final String msg = "No unique author found for resource [" + resourceKey + "]";
-          LOG.error(msg);
-          throw new NoUniqueAuthorForLastCommitException(msg);
-        }
-      }
+    final LastCommitSummary lastCommit = this.getLastCommitSummary(resourceKey);
+
+    if (lastCommit.hasUniqueAuthor()) {
+      final String author = lastCommit.getAuthor();
+      LOG.debug("Found last committer {} for resource {}", author, resourceKey);
+      return author;
     }
 
-    LOG.debug("Found last committer {} for resource {}", author, resourceKey);
-    return author;
+    if (this.assignAmbiguousToTopContributor()) {
+      final String topContributor = lastCommit.getTopContributor();
+      LOG.debug("No unique last committer for resource {}, using top contributor {}", resourceKey, topContributor);
+      return topContributor;
+    }
+
+    // report an ambiguous file once, then keep throwing the same exception for its other issues
+    NoUniqueAuthorForLastCommitException ambiguity = this.blameCache.getAmbiguity(resourceKey);
+    if (ambiguity == null) {
+      final String msg = "No unique author found for resource [" + resourceKey + "]";
+      LOG.error(msg);
+      ambiguity = new NoUniqueAuthorForLastCommitException(msg);
+      this.blameCache.putAmbiguity(resourceKey, ambiguity);
+    }
+    throw ambiguity;
   }
 
   private String getAuthorForIssueLine(final Issue issue) throws IssueAssignPluginException {
 
     final Integer issueLine = issue.line();
 
-    if (issueLine == null) {
+    if (issueLine == null || !this.supports(ScmDataSource.Capability.LINE)) {
       LOG.debug("Issue {} from rule {} has no associated source line.", issue.key(), issue.message());
 
       if (this.assignBlamelessToLastCommitter()) {
@@ -105,59 +138,156 @@ public class Blame {
     }
 
     LOG.debug("Issue line for issue {} is {}", issue.key(), issueLine);
-    final String author =  getMeasuresForResource(issue.componentKey()).getAuthorsByLine().get(issueLine);
+    final ScmMeasures scmMeasures;
+    try {
+      scmMeasures = getScmMeasuresForResource(issue.componentKey());
+    } catch (final MissingScmMeasureDataException e) {
+      return this.getFallbackLine(issue.componentKey(), issueLine, e).getAuthor();
+    }
+    final String author = scmMeasures.getAuthor(this.getBlamedLine(scmMeasures, issueLine));
     LOG.debug("Found author {} for issue.", author);
     return author;
   }
 
+  // the issue API only exposes the first line of an issue, so the blamed range is a window following it
+  private int getBlamedLine(final ScmMeasures scmMeasures, final int issueLine) {
+    final int lineWindow = this.settings.getInt(IssueAssignPlugin.PROPERTY_BLAME_LINE_WINDOW);
+    if (lineWindow <= 0 || !this.supports(ScmDataSource.Capability.RANGE)) {
+      return issueLine;
+    }
+    final int newestLine = scmMeasures.getNewestLine(issueLine, issueLine + lineWindow);
+    LOG.debug("Most recently changed line of {} to {} is {}", new Object[] {issueLine, issueLine + lineWindow, newestLine});
+    return newestLine == 0 ? issueLine : newestLine;
+  }
+
+  // blames the same line window as getBlamedLine, against the local working copy
+  private GitBlameFallback.BlamedLine getFallbackLine(final String componentKey, final int issueLine,
+    final MissingScmMeasureDataException missingMeasures) throws MissingScmMeasureDataException {
+    if (this.gitBlameFallback == null) {
+      throw missingMeasures;
+    }
+    final int lineWindow = Math.max(0, this.settings.getInt(IssueAssignPlugin.PROPERTY_BLAME_LINE_WINDOW));
+    final GitBlameFallback.BlamedLine blamedLine = this.gitBlameFallback.blame(componentKey, issueLine, issueLine + lineWindow);
+    if (blamedLine == null) {
+      throw missingMeasures;
+    }
+    LOG.debug("Blamed line {} of {} against the working copy", blamedLine.getLine(), componentKey);
+    return blamedLine;
+  }
+
+  private boolean assignAmbiguousToTopContributor() {
+    return this.settings.getBoolean(IssueAssignPlugin.PROPERTY_ASSIGN_AMBIGUOUS_TO_TOP_CONTRIBUTOR);
+  }
+
   private boolean assignBlamelessToLastCommitter() {
     final boolean assignBlameless = this.settings.getBoolean(IssueAssignPlugin.PROPERTY_ASSIGN_BLAMELESS_TO_LAST_COMMITTER);
     LOG.debug("Assign blameless to last committer: {}.", assignBlameless);
     return assignBlameless;
   }
 
-  private ScmMeasures getMeasuresForResource(final String resourceKey) throws IssueAssignPluginException {
-    final ScmMeasures scmMeasures = this.getScmMeasuresForResource(resourceKey);
-    if (scmMeasures == null) {
+  private long getLastCommitTime(final String resourceKey) throws IssueAssignPluginException {
+    return this.getLastCommitSummary(resourceKey).getLastCommitTime();
+  }
+
+  private LastCommitSummary getLastCommitSummary(final String resourceKey) throws IssueAssignPluginException {
+    if (!this.supports(ScmDataSource.Capability.FILE)) {
       throw new MissingScmMeasureDataException();
     }
-    return scmMeasures;
-  }
 
-  private Date getLastCommitDate(final String resourceKey) throws IssueAssignPluginException {
-    final ScmMeasures scmMeasures = this.getMeasuresForResource(resourceKey);
-    final Collection<Date> commitDatesForResource = scmMeasures.getLastCommitsByLine().values();
-    final SortedSet<Date> sortedSet = new TreeSet(commitDatesForResource);
-    return sortedSet.last();
+    LastCommitSummary lastCommit = this.blameCache.getLastCommitSummary(resourceKey);
+
+    if (lastCommit == null) {
+      lastCommit = LastCommitSummary.of(this.getScmMeasuresForResource(resourceKey));
+      this.blameCache.putLastCommitSummary(resourceKey, lastCommit);
+    }
+
+    if (!lastCommit.hasCommits()) {
+      throw new MissingScmMeasureDataException();
+    }
+    return lastCommit;
   }
 
-  private List<Integer> getLinesFromLastCommit(final String resourceKey, final Date lastCommitDate) throws IssueAssignPluginException {
+  private ScmMeasures getScmMeasuresForResource(final String componentKey) throws IssueAssignPluginException {
+    final IssueAssignPluginException failure = this.blameCache.getFailure(componentKey);
+    if (failure != null) {
+      LOG.debug("SCM data of {} is known to be unavailable", componentKey);
+      throw failure;
+    }
+
+    ScmMeasures scmMeasures = this.blameCache.getMeasures(componentKey);
 
-    final List<Integer> lines = new ArrayList<Integer>();
-    final ScmMeasures scmMeasures = this.getMeasuresForResource(resourceKey);
-    final Iterator<Map.Entry<Integer, Date>> lastCommitsIterator =
-      scmMeasures.getLastCommitsByLine().entrySet().iterator();
+    if (scmMeasures != null) {
+      return scmMeasures;
+    }
 
-    while (lastCommitsIterator.hasNext()) {
-      final Map.Entry<Integer, Date> entry = lastCommitsIterator.next();
-      if (entry.getValue().equals(lastCommitDate)) {
-        lines.add(entry.getKey());
+    try {
+      final Resource resource = this.resourceFinder.find(componentKey);
+      scmMeasures = this.dataSource.getMeasures(resource);
+      if (scmMeasures == null) {
+        throw new MissingScmMeasureDataException();
       }
+    } catch (final IssueAssignPluginException e) {
+      // remember the failure so that further issues on the same file do not repeat the lookups
+      this.blameCache.putFailure(componentKey, e);
+      throw e;
+    }
+    this.blameCache.putMeasures(componentKey, scmMeasures);
+    // decoded outside the lock of the measures, so single line lookups are served from the raw measures meanwhile
+    this.decoder.decodeAhead(componentKey, scmMeasures);
+    return scmMeasures;
+  }
+
+  /**
+   * Loads the SCM data of a component ahead of its issues.  Returns false once the cache has no room left.
+   */
+  public boolean prefetch(final String componentKey) {
+    if (!this.blameCache.hasRoom()) {
+      return false;
+    }
+    try {
+      this.getScmMeasuresForResource(componentKey);
+    } catch (final IssueAssignPluginException e) {
+      LOG.debug("No SCM data to prefetch for {}", componentKey);
     }
+    return true;
+  }
 
-    return lines;
+  public void logCacheStatistics() {
+    this.blameCache.logStatistics();
   }
 
-  private ScmMeasures getScmMeasuresForResource(final String componentKey) throws MissingScmMeasureDataException, ResourceNotFoundException {
-    ScmMeasures scmMeasures = this.resourceMeasuresMap.get(componentKey);
+  /**
+   * Drops the SCM data of the module once its issues are assigned, so it does not add up over a multi-module build.
+   */
+  public void release() {
+    this.blameCache.clear();
+  }
 
-    if (scmMeasures != null) {
-      return scmMeasures;
+  /**
+   * Releases part of the cached SCM data under memory pressure and returns the number of bytes released.
+   */
+  public long shrinkCache() {
+    return this.blameCache.shrink();
+  }
+
+  private boolean supports(final ScmDataSource.Capability capability) {
+    return this.dataSource.capabilities().contains(capability);
+  }
+
+  private static ScmDataSource selectDataSource(final MeasuresFinder measuresFinder, final ScmDataSource[] dataSources) {
+    if (dataSources != null) {
+      for (final ScmDataSource dataSource : dataSources) {
+        if (dataSource != measuresFinder) {
+          LOG.info("Using SCM data source {}", dataSource.getClass().getName());
+          return dataSource;
+        }
+      }
     }
+    return measuresFinder;
+  }
 
-    final Resource resource = this.resourceFinder.find(componentKey);
-    scmMeasures = this.measuresFinder.getMeasures(resource);
-    this.resourceMeasuresMap.put(componentKey, scmMeasures);
-    return scmMeasures;
+  private static int getCacheSize(final Settings settings) {
+    final int cacheSize = settings.getInt(IssueAssignPlugin.PROPERTY_BLAME_CACHE_SIZE);
+    return cacheSize > 0 ? cacheSize : IssueAssignPlugin.DEFAULT_BLAME_CACHE_SIZE;
   }
 }
@@ -0,0 +1,320 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.plugins.issueassign.exception.IssueAssignPluginException;
+import org.sonar.plugins.issueassign.exception.NoUniqueAuthorForLastCommitException;
+import org.sonar.plugins.issueassign.measures.LastCommitSummary;
+import org.sonar.plugins.issueassign.measures.ScmMeasures;
+import org.sonar.plugins.issueassign.measures.ScmSpillStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU cache of per-file SCM data bounded by the estimated heap footprint of its entries.
+ * Files whose SCM data could not be loaded are remembered separately with the reason of the failure.
+ * With a spill store, files over the budget are moved to it rather than evicted.
+ * Synchronized, as the memory governor shrinks it from the JMX notification thread.  Spilling and releasing spilled
+ * data lock the measures of the files concerned, so they run outside the lock of the cache: a lookup only ever waits
+ * for its own file.
+ */
+public class BlameCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BlameCache.class);
+  private static final long BYTES_PER_MB = 1024L * 1024L;
+  private static final long ENTRY_OVERHEAD_BYTES = 128;
+
+  private final long maxBytes;
+  private final ScmSpillStore spillStore;
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+  private final Map<String, IssueAssignPluginException> failures = new HashMap<String, IssueAssignPluginException>();
+  private long totalBytes;
+  private long hits;
+  private long failureHits;
+  private long misses;
+  private long evictions;
+  private long spills;
+
+  public BlameCache(final int maxSizeInMb) {
+    this(maxSizeInMb, null);
+  }
+
+  public BlameCache(final int maxSizeInMb, final ScmSpillStore spillStore) {
+    this.maxBytes = maxSizeInMb * BYTES_PER_MB;
+    this.spillStore = spillStore;
+  }
+
+  public ScmMeasures getMeasures(final String componentKey) {
+    final Entry entry;
+    synchronized (this) {
+      entry = this.entries.get(componentKey);
+      if (entry == null) {
+        this.misses++;
+        return null;
+      }
+      this.hits++;
+      // the measures decode lazily, so their footprint may have changed since the last access
+      this.reweigh(entry);
+    }
+    this.evictOver(this.maxBytes, componentKey);
+    return entry.measures;
+  }
+
+  public void putMeasures(final String componentKey, final ScmMeasures measures) {
+    final Entry entry = new Entry(componentKey, measures);
+    final Entry previous;
+    synchronized (this) {
+      previous = this.entries.put(componentKey, entry);
+      if (previous != null) {
+        this.totalBytes -= previous.bytes;
+      }
+      this.reweigh(entry);
+    }
+    if (previous != null && previous.measures != measures) {
+      this.release(Collections.singletonList(previous));
+    }
+    this.evictOver(this.maxBytes, componentKey);
+  }
+
+  /**
+   * Returns the exception raised when the SCM data of a file was last looked up, or null if it did not fail.
+   */
+  public synchronized IssueAssignPluginException getFailure(final String componentKey) {
+    final IssueAssignPluginException failure = this.failures.get(componentKey);
+    if (failure != null) {
+      this.failureHits++;
+    }
+    return failure;
+  }
+
+  public synchronized void putFailure(final String componentKey, final IssueAssignPluginException failure) {
+    this.failures.put(componentKey, failure);
+  }
+
+  /**
+   * Returns the cached last commit summary of a file, or null if not computed yet or the file was evicted.
+   */
+  public synchronized LastCommitSummary getLastCommitSummary(final String componentKey) {
+    final Entry entry = this.entries.get(componentKey);
+    return entry == null ? null : entry.lastCommit;
+  }
+
+  public synchronized void putLastCommitSummary(final String componentKey, final LastCommitSummary lastCommit) {
+    final Entry entry = this.entries.get(componentKey);
+    if (entry != null) {
+      entry.lastCommit = lastCommit;
+      this.reweigh(entry);
+    }
+  }
+
+  /**
+   * Returns the exception raised when the last commit of a file was found to have several authors, or null.
+   */
+  public synchronized NoUniqueAuthorForLastCommitException getAmbiguity(final String componentKey) {
+    final Entry entry = this.entries.get(componentKey);
+    return entry == null ? null : entry.ambiguity;
+  }
+
+  public synchronized void putAmbiguity(final String componentKey, final NoUniqueAuthorForLastCommitException ambiguity) {
+    final Entry entry = this.entries.get(componentKey);
+    if (entry != null) {
+      entry.ambiguity = ambiguity;
+    }
+  }
+
+  public void clear() {
+    final List<Entry> cleared;
+    synchronized (this) {
+      cleared = new ArrayList<Entry>(this.entries.values());
+      this.entries.clear();
+      this.failures.clear();
+      this.totalBytes = 0;
+    }
+    this.release(cleared);
+  }
+
+  /**
+   * Spills or evicts the least recently used files until half of the retained bytes are released.
+   * Returns the number of bytes released.
+   */
+  public long shrink() {
+    final long before = this.getTotalBytes();
+    this.evictOver(before / 2, null);
+    return Math.max(0, before - this.getTotalBytes());
+  }
+
+  public synchronized boolean hasRoom() {
+    return this.totalBytes < this.maxBytes;
+  }
+
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  public synchronized long getTotalBytes() {
+    return this.totalBytes;
+  }
+
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  public synchronized long getEvictions() {
+    return this.evictions;
+  }
+
+  public synchronized long getSpills() {
+    return this.spills;
+  }
+
+  public synchronized int getFailureCount() {
+    return this.failures.size();
+  }
+
+  public synchronized long getFailureHits() {
+    return this.failureHits;
+  }
+
+  public synchronized void logStatistics() {
+    LOG.info("Blame cache: {} hits, {} misses, {} evictions, {} spills, {} files / {} KB retained, {} files without SCM data ({} hits)",
+      new Object[] {this.hits, this.misses, this.evictions, this.spills, this.entries.size(), this.totalBytes / 1024,
+        this.failures.size(), this.failureHits});
+  }
+
+  private void reweigh(final Entry entry) {
+    final long bytes = ENTRY_OVERHEAD_BYTES + entry.measures.getRetainedBytes()
+      + (entry.lastCommit == null ? 0 : entry.lastCommit.getEstimatedBytes());
+    this.totalBytes += bytes - entry.bytes;
+    entry.bytes = bytes;
+  }
+
+  // the entry in use is never evicted, even if it alone exceeds the budget.  Files are spilled from the least recently
+  // used on, and only evicted if that is not enough, already spilled ones last as they hardly retain anything.
+  private void evictOver(final long budget, final String keepKey) {
+    final List<Entry> toSpill;
+    synchronized (this) {
+      if (this.totalBytes <= budget) {
+        return;
+      }
+      toSpill = this.selectForSpill(budget, keepKey);
+    }
+
+    final boolean[] spilled = new boolean[toSpill.size()];
+    for (int i = 0; i < spilled.length; i++) {
+      spilled[i] = toSpill.get(i).measures.spillTo(this.spillStore);
+    }
+
+    final List<Entry> evicted = new ArrayList<Entry>();
+    synchronized (this) {
+      for (int i = 0; i < spilled.length; i++) {
+        final Entry entry = toSpill.get(i);
+        entry.spilling = false;
+        if (!spilled[i]) {
+          continue;
+        }
+        this.spills++;
+        entry.spilled = true;
+        if (this.entries.get(entry.key) == entry) {
+          this.reweigh(entry);
+        } else {
+          // dropped by another thread while it was being spilled
+          evicted.add(entry);
+        }
+      }
+      this.evictOver(budget, keepKey, false, evicted);
+      this.evictOver(budget, keepKey, true, evicted);
+    }
+    this.release(evicted);
+  }
+
+  // the least recently used files still on the heap whose spilling would bring the cache within the budget
+  private List<Entry> selectForSpill(final long budget, final String keepKey) {
+    if (this.spillStore == null) {
+      return Collections.emptyList();
+    }
+    final List<Entry> toSpill = new ArrayList<Entry>();
+    long projectedBytes = this.totalBytes;
+    for (final Entry entry : this.entries.values()) {
+      if (projectedBytes <= budget) {
+        break;
+      }
+      if (!entry.key.equals(keepKey) && !entry.spilled && !entry.spilling) {
+        entry.spilling = true;
+        toSpill.add(entry);
+        projectedBytes -= entry.bytes - ENTRY_OVERHEAD_BYTES;
+      }
+    }
+    return toSpill;
+  }
+
+  private void evictOver(final long budget, final String keepKey, final boolean spilled, final List<Entry> evicted) {
+    final Iterator<Entry> iterator = this.entries.values().iterator();
+    while (this.totalBytes > budget && iterator.hasNext()) {
+      final Entry eldest = iterator.next();
+      if (eldest.key.equals(keepKey) || eldest.spilling || eldest.spilled != spilled) {
+        continue;
+      }
+      LOG.debug("Evicting SCM data of {} from the blame cache", eldest.key);
+      this.totalBytes -= eldest.bytes;
+      iterator.remove();
+      evicted.add(eldest);
+      this.evictions++;
+    }
+  }
+
+  private void release(final List<Entry> dropped) {
+    if (this.spillStore == null) {
+      return;
+    }
+    for (final Entry entry : dropped) {
+      if (entry.spilled) {
+        entry.measures.releaseSpilled(this.spillStore);
+      }
+    }
+  }
+
+  private static final class Entry {
+    private final String key;
+    private final ScmMeasures measures;
+    private LastCommitSummary lastCommit;
+    private NoUniqueAuthorForLastCommitException ambiguity;
+    private long bytes;
+    // guarded by the cache
+    private boolean spilling;
+    private boolean spilled;
+
+    Entry(final String key, final ScmMeasures measures) {
+      this.key = key;
+      this.measures = measures;
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.picocontainer.Startable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.issueassign.measures.ScmMeasures;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes SCM data on a pool of worker threads ahead of the issues that need it.  Without workers, files are decoded
+ * on demand by the thread that looks them up.
+ */
+public class BlameDecoder implements BatchExtension, Startable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BlameDecoder.class);
+  private static final int QUEUED_DECODES_PER_THREAD = 64;
+
+  private final int threads;
+  private final ConcurrentMap<String, Future<?>> inFlight = new ConcurrentHashMap<String, Future<?>>();
+  private ExecutorService executor;
+
+  public BlameDecoder(final Settings settings) {
+    this.threads = Math.max(0, settings.getInt(IssueAssignPlugin.PROPERTY_BLAME_DECODE_THREADS));
+  }
+
+  @Override
+  public void start() {
+    if (this.threads > 0) {
+      LOG.debug("Decoding SCM data on {} worker threads", this.threads);
+      this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(this.threads * QUEUED_DECODES_PER_THREAD), new DecoderThreadFactory());
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (this.executor != null) {
+      this.executor.shutdownNow();
+      this.executor = null;
+    }
+    this.inFlight.clear();
+  }
+
+  /**
+   * Queues a full decode of the given file.  Does nothing without workers, when the same file is already queued,
+   * or when the queue is full, in which case the file is decoded on demand.
+   */
+  public void decodeAhead(final String componentKey, final ScmMeasures measures) {
+    final ExecutorService workers = this.executor;
+    if (workers == null) {
+      return;
+    }
+
+    final FutureTask<Void> decode = new FutureTask<Void>(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          measures.decode();
+        } finally {
+          BlameDecoder.this.inFlight.remove(componentKey);
+        }
+      }
+    }, null);
+    if (this.inFlight.putIfAbsent(componentKey, decode) != null) {
+      return;
+    }
+
+    try {
+      workers.execute(decode);
+    } catch (final RejectedExecutionException e) {
+      LOG.debug("Decode queue is full, {} will be decoded on demand", componentKey);
+      this.inFlight.remove(componentKey, decode);
+    }
+  }
+
+  int inFlightCount() {
+    return this.inFlight.size();
+  }
+
+  private static final class DecoderThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+      final Thread thread = new Thread(runnable, "issueassign-blame-decoder-" + this.count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
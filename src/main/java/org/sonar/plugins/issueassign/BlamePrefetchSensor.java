@@ -0,0 +1,68 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.Phase;
+import org.sonar.api.batch.Sensor;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Project;
+
+/**
+ * Warms the blame cache with the SCM data of the module's files once the SCM sensor has run, before issues are tracked.
+ */
+@Phase(name = Phase.Name.POST)
+public class BlamePrefetchSensor implements Sensor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BlamePrefetchSensor.class);
+  private final Settings settings;
+  private final FileSystem fileSystem;
+  private final Blame blame;
+
+  public BlamePrefetchSensor(final Settings settings, final FileSystem fileSystem, final Blame blame) {
+    this.settings = settings;
+    this.fileSystem = fileSystem;
+    this.blame = blame;
+  }
+
+  @Override
+  public boolean shouldExecuteOnProject(final Project project) {
+    return this.settings.getBoolean(IssueAssignPlugin.PROPERTY_ENABLED)
+      && this.settings.getBoolean(IssueAssignPlugin.PROPERTY_BLAME_PREFETCH);
+  }
+
+  @Override
+  public void analyse(final Project module, final SensorContext context) {
+    int prefetched = 0;
+    for (final InputFile inputFile : this.fileSystem.inputFiles(this.fileSystem.predicates().all())) {
+      // issues carry the same module:relativePath component key
+      if (!this.blame.prefetch(module.getEffectiveKey() + ":" + inputFile.relativePath())) {
+        LOG.info("Blame cache is full, stopped prefetching SCM data after {} files", prefetched);
+        return;
+      }
+      prefetched++;
+    }
+    LOG.debug("Prefetched SCM data of {} files", prefetched);
+  }
+}
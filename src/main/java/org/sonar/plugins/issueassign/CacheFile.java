@@ -0,0 +1,159 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Text file keeping one of the plugin caches between analyses: a header line identifying its format, then one record
+ * of tab-separated fields per line.  Fields are escaped, so they may hold any character.
+ */
+final class CacheFile {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CacheFile.class);
+  private static final String ENCODING = "UTF-8";
+  private static final String SEPARATOR = "\t";
+  private static final String NONE = "-";
+
+  private final File file;
+  private final String header;
+
+  CacheFile(final File file, final String header) {
+    this.file = file;
+    this.header = header;
+  }
+
+  boolean exists() {
+    return this.file.isFile();
+  }
+
+  /**
+   * Returns the records of the file, or null if it was written with another header.  Records that do not have the
+   * given number of fields are skipped.
+   */
+  List<String[]> read(final int fieldCount) throws IOException {
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.file), ENCODING));
+      if (!this.header.equals(reader.readLine())) {
+        return null;
+      }
+      final List<String[]> records = new ArrayList<String[]>();
+      String line = reader.readLine();
+      while (line != null) {
+        final String[] fields = line.split(SEPARATOR, -1);
+        if (fields.length == fieldCount) {
+          for (int i = 0; i < fields.length; i++) {
+            fields[i] = unescape(fields[i]);
+          }
+          records.add(fields);
+        }
+        line = reader.readLine();
+      }
+      return records;
+    } finally {
+      closeQuietly(reader);
+    }
+  }
+
+  void write(final Collection<String[]> records) throws IOException {
+    Writer writer = null;
+    try {
+      this.file.getParentFile().mkdirs();
+      writer = new OutputStreamWriter(new FileOutputStream(this.file), ENCODING);
+      writer.write(this.header + "\n");
+      for (final String[] fields : records) {
+        for (int i = 0; i < fields.length; i++) {
+          writer.write((i == 0 ? "" : SEPARATOR) + escape(fields[i]));
+        }
+        writer.write("\n");
+      }
+    } finally {
+      closeQuietly(writer);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return this.file.toString();
+  }
+
+  /**
+   * Field value of a nullable string, told apart from the string "-".
+   */
+  static String encode(final String value) {
+    return value == null ? NONE : "=" + value;
+  }
+
+  static String decode(final String field) {
+    return field.startsWith("=") ? field.substring(1) : null;
+  }
+
+  private static String escape(final String value) {
+    return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+  }
+
+  private static String unescape(final String value) {
+    final StringBuilder result = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c != '\\' || i + 1 == value.length()) {
+        result.append(c);
+        continue;
+      }
+      final char escaped = value.charAt(++i);
+      if (escaped == 't') {
+        result.append('\t');
+      } else if (escaped == 'n') {
+        result.append('\n');
+      } else if (escaped == 'r') {
+        result.append('\r');
+      } else {
+        result.append(escaped);
+      }
+    }
+    return result.toString();
+  }
+
+  private static void closeQuietly(final Closeable closeable) {
+    if (closeable == null) {
+      return;
+    }
+    try {
+      closeable.close();
+    } catch (final IOException e) {
+      LOG.debug("Unable to close " + closeable, e);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.sonar.api.user.User;
+
+/**
+ * User restored from one of the plugin's persistent caches, without going through UserFinder.
+ */
+final class CachedUser implements User {
+
+  private final String login;
+  private final String name;
+
+  CachedUser(final String login, final String name) {
+    this.login = login;
+    this.name = name;
+  }
+
+  @Override
+  public String login() {
+    return this.login;
+  }
+
+  @Override
+  public String name() {
+    return this.name;
+  }
+
+  @Override
+  public String email() {
+    return null;
+  }
+
+  @Override
+  public boolean active() {
+    return true;
+  }
+}
@@ -0,0 +1,302 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.config.Settings;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Blames lines of files without SCM measures against the local git working copy.  Each file is blamed in full by a
+ * single git process, on its first issue, and the result, including files git knows nothing about, is cached.
+ */
+public class GitBlameFallback implements BatchExtension {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GitBlameFallback.class);
+  private static final String UNCOMMITTED_REVISION = "0000000000000000000000000000000000000000";
+  private static final long MILLIS_PER_SECOND = 1000L;
+  private static final long BLAME_TIMEOUT_MILLIS = 60 * MILLIS_PER_SECOND;
+  private static final String[] BLAME_COMMAND = {"git", "blame", "--porcelain", "--"};
+
+  private final boolean enabled;
+  private final ResourceFinder resourceFinder;
+  private final long timeoutMillis;
+  private final String[] command;
+  private final Map<String, BlamedFile> files = new HashMap<String, BlamedFile>();
+
+  public GitBlameFallback(final Settings settings, final ResourceFinder resourceFinder) {
+    this(settings, resourceFinder, BLAME_TIMEOUT_MILLIS, BLAME_COMMAND);
+  }
+
+  /**
+   * Runs the given command, followed by the file name, rather than git blame.
+   */
+  GitBlameFallback(final Settings settings, final ResourceFinder resourceFinder, final long timeoutMillis,
+    final String... command) {
+    this.enabled = settings.getBoolean(IssueAssignPlugin.PROPERTY_GIT_BLAME_FALLBACK);
+    this.resourceFinder = resourceFinder;
+    this.timeoutMillis = timeoutMillis;
+    this.command = command.clone();
+  }
+
+  public boolean isEnabled() {
+    return this.enabled;
+  }
+
+  /**
+   * Returns the most recently committed line of [fromLine, toLine], or null if none of them is committed or the file
+   * cannot be blamed.
+   */
+  public BlamedLine blame(final String componentKey, final int fromLine, final int toLine) {
+    BlamedFile blamedFile = this.files.get(componentKey);
+    if (blamedFile == null) {
+      blamedFile = new BlamedFile(this.resourceFinder.findInputFile(componentKey));
+      if (blamedFile.inputFile != null) {
+        this.runBlame(blamedFile);
+      }
+      this.files.put(componentKey, blamedFile);
+    }
+    if (blamedFile.inputFile == null) {
+      return null;
+    }
+
+    final int from = Math.max(fromLine, 1);
+    final int to = Math.min(toLine, blamedFile.inputFile.lines());
+    return blamedFile.newestLine(from, to);
+  }
+
+  private void runBlame(final BlamedFile blamedFile) {
+    final File file = blamedFile.inputFile.file();
+    final List<String> command = new ArrayList<String>(Arrays.asList(this.command));
+    command.add(file.getName());
+    final ProcessBuilder processBuilder = new ProcessBuilder(command)
+      .directory(file.getParentFile())
+      .redirectErrorStream(true);
+    LOG.debug("Running git blame on {}", file);
+
+    Watchdog watchdog = null;
+    try {
+      final Process process = processBuilder.start();
+      watchdog = new Watchdog(process, this.timeoutMillis);
+      watchdog.start();
+      final List<BlamedLine> lines;
+      final int exitValue;
+      try {
+        lines = parsePorcelain(new InputStreamReader(process.getInputStream(), "UTF-8"));
+        exitValue = process.waitFor();
+      } finally {
+        process.getInputStream().close();
+      }
+      if (!watchdog.complete()) {
+        this.timedOut(blamedFile, file);
+        return;
+      }
+      if (exitValue != 0) {
+        LOG.debug("git blame failed on {}, ignoring the file", file);
+        blamedFile.inputFile = null;
+        return;
+      }
+      for (final BlamedLine line : lines) {
+        blamedFile.lines.put(line.getLine(), line);
+      }
+    } catch (final IOException e) {
+      if (watchdog != null && !watchdog.complete()) {
+        this.timedOut(blamedFile, file);
+        return;
+      }
+      LOG.warn("Unable to run git blame on " + file + ", ignoring the file", e);
+      blamedFile.inputFile = null;
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      blamedFile.inputFile = null;
+    }
+  }
+
+  private void timedOut(final BlamedFile blamedFile, final File file) {
+    LOG.warn("git blame did not complete within {} ms on {}, ignoring the file", this.timeoutMillis, file);
+    blamedFile.inputFile = null;
+  }
+
+  /**
+   * Parses the output of git blame --porcelain.  Commit details are only printed for the first line of each commit.
+   */
+  static List<BlamedLine> parsePorcelain(final Reader porcelain) throws IOException {
+    final BufferedReader reader = new BufferedReader(porcelain);
+    final Map<String, String[]> commits = new HashMap<String, String[]>();
+    final List<BlamedLine> lines = new ArrayList<BlamedLine>();
+    String[] commit = null;
+    String revision = null;
+    int line = 0;
+
+    String text = reader.readLine();
+    while (text != null) {
+      if (text.startsWith("\t")) {
+        if (commit != null && !UNCOMMITTED_REVISION.equals(revision) && commit[0] != null && commit[1] != null) {
+          lines.add(new BlamedLine(line, commit[0], Long.parseLong(commit[1]) * MILLIS_PER_SECOND, revision));
+        }
+      } else if (text.startsWith("author-mail ")) {
+        commit[0] = stripMailBrackets(text.substring("author-mail ".length()));
+      } else if (text.startsWith("committer-time ")) {
+        commit[1] = text.substring("committer-time ".length()).trim();
+      } else if (isHeader(text)) {
+        final String[] header = text.split(" ");
+        revision = header[0];
+        line = Integer.parseInt(header[2]);
+        commit = commits.get(revision);
+        if (commit == null) {
+          commit = new String[2];
+          commits.put(revision, commit);
+        }
+      }
+      text = reader.readLine();
+    }
+    return lines;
+  }
+
+  // <40 hex digit sha> <original line> <final line> [<lines in group>]
+  private static boolean isHeader(final String text) {
+    final int revisionLength = UNCOMMITTED_REVISION.length();
+    if (text.length() <= revisionLength || text.charAt(revisionLength) != ' ') {
+      return false;
+    }
+    for (int i = 0; i < revisionLength; i++) {
+      if (Character.digit(text.charAt(i), 16) < 0) {
+        return false;
+      }
+    }
+    return text.split(" ").length >= 3;
+  }
+
+  // the SCM measures of git projects carry the author e-mail
+  private static String stripMailBrackets(final String mail) {
+    final String trimmed = mail.trim();
+    if (trimmed.startsWith("<") && trimmed.endsWith(">")) {
+      return trimmed.substring(1, trimmed.length() - 1);
+    }
+    return trimmed;
+  }
+
+  public static final class BlamedLine {
+
+    private final int line;
+    private final String author;
+    private final long commitTime;
+    private final String revision;
+
+    BlamedLine(final int line, final String author, final long commitTime, final String revision) {
+      this.line = line;
+      this.author = author;
+      this.commitTime = commitTime;
+      this.revision = revision;
+    }
+
+    public int getLine() {
+      return this.line;
+    }
+
+    public String getAuthor() {
+      return this.author;
+    }
+
+    public long getCommitTime() {
+      return this.commitTime;
+    }
+
+    public String getRevision() {
+      return this.revision;
+    }
+  }
+
+  private static final class BlamedFile {
+
+    private InputFile inputFile;
+    private final Map<Integer, BlamedLine> lines = new HashMap<Integer, BlamedLine>();
+
+    BlamedFile(final InputFile inputFile) {
+      this.inputFile = inputFile;
+    }
+
+    BlamedLine newestLine(final int fromLine, final int toLine) {
+      BlamedLine newest = null;
+      for (int line = fromLine; line <= toLine; line++) {
+        final BlamedLine candidate = this.lines.get(line);
+        if (candidate != null && (newest == null || candidate.getCommitTime() > newest.getCommitTime())) {
+          newest = candidate;
+        }
+      }
+      return newest;
+    }
+  }
+
+  // destroys a git process still running after the timeout, which also ends the reading of its output.  The
+  // watchdog and the reader settle once, through the same flag, whether the process completed or timed out.
+  private static final class Watchdog extends Thread {
+
+    private static final int RUNNING = 0;
+    private static final int COMPLETED = 1;
+    private static final int TIMED_OUT = 2;
+
+    private final Process process;
+    private final long timeoutMillis;
+    private final AtomicInteger state = new AtomicInteger(RUNNING);
+
+    Watchdog(final Process process, final long timeoutMillis) {
+      super("issueassign-git-blame-watchdog");
+      this.process = process;
+      this.timeoutMillis = timeoutMillis;
+      this.setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      try {
+        Thread.sleep(this.timeoutMillis);
+      } catch (final InterruptedException e) {
+        return;
+      }
+      if (this.state.compareAndSet(RUNNING, TIMED_OUT)) {
+        this.process.destroy();
+      }
+    }
+
+    /**
+     * Returns true if the process completed in time, false if it was or is being destroyed.
+     */
+    boolean complete() {
+      this.state.compareAndSet(RUNNING, COMPLETED);
+      this.interrupt();
+      return this.state.get() == COMPLETED;
+    }
+  }
+}
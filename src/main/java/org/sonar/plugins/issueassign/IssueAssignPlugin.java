@@ -25,6 +25,9 @@ import org.sonar.api.SonarPlugin;
 import org.sonar.api.config.PropertyDefinition;
 import org.sonar.api.resources.Qualifiers;
 import org.sonar.api.rule.Severity;
+import org.sonar.plugins.issueassign.measures.MeasuresFinder;
+import org.sonar.plugins.issueassign.measures.ScmSpillStore;
+import org.sonar.plugins.issueassign.measures.ScmSymbolTable;
 import org.sonar.plugins.issueassign.notification.*;
 import org.sonar.plugins.issueassign.util.DiagnosticLogger;
 
@@ -42,6 +45,7 @@ public final class IssueAssignPlugin extends SonarPlugin {
   public static final String PROPERTY_ISSUE_CUTOFF_DATE = "sonar.issueassign.issue.cutoff";
   public static final String PROPERTY_ASSIGN_TO_LAST_COMMITTER = "sonar.issueassign.assign.to.last.committer";
   public static final String PROPERTY_ASSIGN_BLAMELESS_TO_LAST_COMMITTER = "sonar.issueassign.assign.blameless.to.last.committer";
+  public static final String PROPERTY_ASSIGN_AMBIGUOUS_TO_TOP_CONTRIBUTOR = "sonar.issueassign.assign.ambiguous.to.top.contributor";
   public static final String PROPERTY_NEW_ISSUES_NOTIFICATION_SUBJECT = "sonar.issueassign.notification.new.subject";
   public static final String PROPERTY_NEW_ISSUES_NOTIFICATION_CONTENT = "sonar.issueassign.notification.new.content";
   public static final String PROPERTY_CHANGED_ISSUES_NOTIFICATION_SUBJECT = "sonar.issueassign.notification.changed.subject";
@@ -49,13 +53,29 @@ public final class IssueAssignPlugin extends SonarPlugin {
   public static final String PROPERTY_SEVERITY = "sonar.issueassign.severity";
   public static final String PROPERTY_ONLY_ASSIGN_NEW = "sonar.onlyassignnew";
   public static final String PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME = "sonar.extract.sonar.user.from.scm.user";
+  public static final String PROPERTY_EXTRACT_SONAR_USERNAME_RULES = "sonar.extract.sonar.user.from.scm.user.rules";
   public static final String PROPERTY_DIAGNOSTIC_LOGGING = "sonar.diagnostic.logging";
+  public static final String PROPERTY_BLAME_LINE_WINDOW = "sonar.issueassign.blame.line.window";
+  public static final String PROPERTY_BLAME_CACHE_SIZE = "sonar.issueassign.blame.cache.size";
+  public static final String PROPERTY_BLAME_PREFETCH = "sonar.issueassign.blame.prefetch";
+  public static final String PROPERTY_BLAME_DECODE_THREADS = "sonar.issueassign.blame.decode.threads";
+  public static final String PROPERTY_BLAME_SPILL = "sonar.issueassign.blame.spill";
+  public static final String PROPERTY_ASSIGNMENT_CACHE_DIR = "sonar.issueassign.assignment.cache.dir";
+  public static final String PROPERTY_MEMORY_THRESHOLD = "sonar.issueassign.memory.threshold";
+  public static final String PROPERTY_EMAIL_INDEX_THRESHOLD = "sonar.issueassign.email.index.threshold";
+  public static final String PROPERTY_USER_CACHE_TTL = "sonar.issueassign.user.cache.ttl";
+  public static final String PROPERTY_GIT_BLAME_FALLBACK = "sonar.issueassign.git.blame.fallback";
+
+  public static final int DEFAULT_BLAME_CACHE_SIZE = 64;
+  public static final int DEFAULT_EMAIL_INDEX_THRESHOLD = 100;
+  public static final int DEFAULT_USER_CACHE_TTL = 24;
 
   public static final String CONFIGURATION_CATEGORY = "Issue Assign";
   public static final String CONFIGURATION_SUBCATEGORY_WHEN = "When";
   public static final String CONFIGURATION_SUBCATEGORY_NOTIFY = "Notify";
   public static final String CONFIGURATION_SUBCATEGORY_WHO = "Who";
   public static final String CONFIGURATION_SUBCATEGORY_LOGGING = "Logging";
+  public static final String CONFIGURATION_SUBCATEGORY_PERFORMANCE = "Performance";
 
   public static final String NOTIFICATION_TYPE_NEW = "my-new-issues";
   public static final String NOTIFICATION_TYPE_CHANGED = "my-changed-issues";
@@ -76,6 +96,100 @@ public final class IssueAssignPlugin extends SonarPlugin {
                 .build());
   }
 
+  public static List<PropertyDefinition> getPerformanceProperties() {
+    return ImmutableList
+      .of(
+        PropertyDefinition.builder(IssueAssignPlugin.PROPERTY_BLAME_CACHE_SIZE)
+          .name("Blame cache size (MB)")
+          .description("Approximate heap budget for the SCM data cached while assigning issues.  The least recently used " +
+                       "files are evicted beyond it.")
+          .category(IssueAssignPlugin.CONFIGURATION_CATEGORY)
+          .subCategory(IssueAssignPlugin.CONFIGURATION_SUBCATEGORY_PERFORMANCE)
+          .onQualifiers(Qualifiers.PROJECT)
+          .type(PropertyType.INTEGER)
+          .defaultValue(String.valueOf(DEFAULT_BLAME_CACHE_SIZE))
+          .build(),
+
+        PropertyDefinition.builder(IssueAssignPlugin.PROPERTY_BLAME_PREFETCH)
+          .name("Prefetch SCM data")
+          .description("Load the SCM data of the module's files into the blame cache at the end of the sensor phase, " +
+                       "rather than one file at a time while issues are assigned.  Stops once the cache is full.")
+          .category(IssueAssignPlugin.CONFIGURATION_CATEGORY)
+          .subCategory(IssueAssignPlugin.CONFIGURATION_SUBCATEGORY_PERFORMANCE)
+          .onQualifiers(Qualifiers.PROJECT)
+          .type(PropertyType.BOOLEAN)
+          .defaultValue(FALSE)
+          .build(),
+
+        PropertyDefinition.builder(IssueAssignPlugin.PROPERTY_BLAME_DECODE_THREADS)
+          .name("SCM data decoding threads")
+          .description("Number of worker threads decoding the SCM data of loaded files ahead of their issues.  " +
+                       "0 decodes on demand on the analysis thread.")
+          .category(IssueAssignPlugin.CONFIGURATION_CATEGORY)
+          .subCategory(IssueAssignPlugin.CONFIGURATION_SUBCATEGORY_PERFORMANCE)
+          .onQualifiers(Qualifiers.PROJECT)
+          .type(PropertyType.INTEGER)
+          .defaultValue("0")
+          .build(),
+
+        PropertyDefinition.builder(IssueAssignPlugin.PROPERTY_BLAME_SPILL)
+          .name("Spill SCM data to disk")
+          .description("Move the decoded SCM data of files that do not fit the blame cache to a temporary memory-mapped " +
+                       "file in the working directory instead of evicting them.  Keeps heap usage flat on very large projects.")
+          .category(IssueAssignPlugin.CONFIGURATION_CATEGORY)
+          .subCategory(IssueAssignPlugin.CONFIGURATION_SUBCATEGORY_PERFORMANCE)
+          .onQualifiers(Qualifiers.PROJECT)
+          .type(PropertyType.BOOLEAN)
+          .defaultValue(FALSE)
+          .build(),
+
+        PropertyDefinition.builder(IssueAssignPlugin.PROPERTY_ASSIGNMENT_CACHE_DIR)
+          .name("Assignment cache directory")
+          .description("Directory, relative to the module base directory if not absolute, where the assignment decisions " +
+                       "of each analysis are kept.  Issues of files unchanged since the previous analysis then reuse " +
+                       "them without loading SCM data or looking up users.  Empty disables the cache.  Only useful " +
+                       "when existing issues are assigned too.")
+          .category(IssueAssignPlugin.CONFIGURATION_CATEGORY)
+          .subCategory(IssueAssignPlugin.CONFIGURATION_SUBCATEGORY_PERFORMANCE)
+          .onQualifiers(Qualifiers.PROJECT)
+          .build(),
+
+        PropertyDefinition.builder(IssueAssignPlugin.PROPERTY_MEMORY_THRESHOLD)
+          .name("Heap usage threshold (%)")
+          .description("Heap usage after a garbage collection, as a percentage of the maximum, above which the " +
+                       "plugin releases part of its SCM data and user caches.  Assignment then goes on more slowly instead of running out of memory.  " +
+                       "0 disables it.")
+          .category(IssueAssignPlugin.CONFIGURATION_CATEGORY)
+          .subCategory(IssueAssignPlugin.CONFIGURATION_SUBCATEGORY_PERFORMANCE)
+          .onQualifiers(Qualifiers.PROJECT)
+          .type(PropertyType.INTEGER)
+          .defaultValue("0")
+          .build(),
+
+        PropertyDefinition.builder(IssueAssignPlugin.PROPERTY_EMAIL_INDEX_THRESHOLD)
+          .name("Email index threshold")
+          .description("Number of distinct SCM author emails looked up with targeted user queries before all SonarQube " +
+                       "users are fetched and indexed by email instead.  0 always indexes all users.")
+          .category(IssueAssignPlugin.CONFIGURATION_CATEGORY)
+          .subCategory(IssueAssignPlugin.CONFIGURATION_SUBCATEGORY_PERFORMANCE)
+          .onQualifiers(Qualifiers.PROJECT)
+          .type(PropertyType.INTEGER)
+          .defaultValue(String.valueOf(DEFAULT_EMAIL_INDEX_THRESHOLD))
+          .build(),
+
+        PropertyDefinition.builder(IssueAssignPlugin.PROPERTY_USER_CACHE_TTL)
+          .name("SCM author cache TTL (hours)")
+          .description("How long the SonarQube user an SCM author resolved to, or the absence of one, is kept in the " +
+                       "assignment cache directory for later analyses.  Entries are checked again in the background " +
+                       "when they near expiry.  0 disables it.")
+          .category(IssueAssignPlugin.CONFIGURATION_CATEGORY)
+          .subCategory(IssueAssignPlugin.CONFIGURATION_SUBCATEGORY_PERFORMANCE)
+          .onQualifiers(Qualifiers.PROJECT)
+          .type(PropertyType.INTEGER)
+          .defaultValue(String.valueOf(DEFAULT_USER_CACHE_TTL))
+          .build());
+  }
+
   public static List<PropertyDefinition> getNotificationProperties() {
     return ImmutableList
       .of(
@@ -205,6 +319,42 @@ public final class IssueAssignPlugin extends SonarPlugin {
           .defaultValue("true")
           .build(),
 
+        PropertyDefinition
+          .builder(IssueAssignPlugin.PROPERTY_ASSIGN_AMBIGUOUS_TO_TOP_CONTRIBUTOR)
+          .name("Assign to top contributor when the last commit is ambiguous")
+          .description("When the last commit of a file cannot be attributed to a single author, assign issues that " +
+                       "go to the last committer to the author of most of the file's lines instead of the default assignee.")
+          .category(IssueAssignPlugin.CONFIGURATION_CATEGORY)
+          .subCategory(IssueAssignPlugin.CONFIGURATION_SUBCATEGORY_WHO)
+          .onQualifiers(Qualifiers.PROJECT)
+          .type(PropertyType.BOOLEAN)
+          .defaultValue(FALSE)
+          .build(),
+
+        PropertyDefinition
+          .builder(IssueAssignPlugin.PROPERTY_BLAME_LINE_WINDOW)
+          .name("Blame line window")
+          .description("Number of lines following the issue line that are blamed as well.  The issue is assigned to " +
+                       "the author of the most recently changed line of the window.  0 only blames the issue line.")
+          .category(IssueAssignPlugin.CONFIGURATION_CATEGORY)
+          .subCategory(IssueAssignPlugin.CONFIGURATION_SUBCATEGORY_WHO)
+          .onQualifiers(Qualifiers.PROJECT)
+          .type(PropertyType.INTEGER)
+          .defaultValue("0")
+          .build(),
+
+        PropertyDefinition
+          .builder(IssueAssignPlugin.PROPERTY_GIT_BLAME_FALLBACK)
+          .name("Fall back to git blame")
+          .description("When a file has no SCM measures, run git blame on the lines of its issues in the local working " +
+                       "copy instead of assigning them to the default assignee.")
+          .category(IssueAssignPlugin.CONFIGURATION_CATEGORY)
+          .subCategory(IssueAssignPlugin.CONFIGURATION_SUBCATEGORY_WHO)
+          .onQualifiers(Qualifiers.PROJECT)
+          .type(PropertyType.BOOLEAN)
+          .defaultValue(FALSE)
+          .build(),
+
         PropertyDefinition.builder(IssueAssignPlugin.PROPERTY_DEFAULT_ASSIGNEE)
           .name("Default Assignee")
           .description("SonarQube user to whom issues will be assigned if the original SCM author is not available in SonarQube.")
@@ -220,6 +370,17 @@ public final class IssueAssignPlugin extends SonarPlugin {
           .subCategory(IssueAssignPlugin.CONFIGURATION_SUBCATEGORY_WHO)
           .onQualifiers(Qualifiers.PROJECT)
           .type(PropertyType.STRING)
+          .build(),
+
+        PropertyDefinition.builder(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_RULES)
+          .name("SonarQube Username Extraction Rules")
+          .description("Further regular expressions extracting the SonarQube username from the SCM username, one per line, " +
+                       "each capturing the username in its first group.  They are tried in order after the single " +
+                       "expression above, and the first one that matches is used.  Invalid expressions are skipped.")
+          .category(IssueAssignPlugin.CONFIGURATION_CATEGORY)
+          .subCategory(IssueAssignPlugin.CONFIGURATION_SUBCATEGORY_WHO)
+          .onQualifiers(Qualifiers.PROJECT)
+          .type(PropertyType.TEXT)
           .build()
       );
   }
@@ -228,6 +389,18 @@ public final class IssueAssignPlugin extends SonarPlugin {
   public List<Object> getExtensions() {
     List<Object> extensions = new ArrayList<Object>();
     extensions.add(DiagnosticLogger.class);
+    extensions.add(ScmSymbolTable.class);
+    extensions.add(ScmAuthorCache.class);
+    extensions.add(Users.class);
+    extensions.add(ResourceFinder.class);
+    extensions.add(MeasuresFinder.class);
+    extensions.add(BlameDecoder.class);
+    extensions.add(ScmSpillStore.class);
+    extensions.add(GitBlameFallback.class);
+    extensions.add(Blame.class);
+    extensions.add(AssignmentCache.class);
+    extensions.add(MemoryGovernor.class);
+    extensions.add(BlamePrefetchSensor.class);
     extensions.add(IssueAssigner.class);
     extensions.add(SendIssueNotificationsPostJob.class);
     extensions.add(MyNewIssuesEmailTemplate.class);
@@ -240,6 +413,7 @@ public final class IssueAssignPlugin extends SonarPlugin {
     extensions.addAll(IssueAssignPlugin.getWhenProperties());
     extensions.addAll(IssueAssignPlugin.getNotificationProperties());
     extensions.addAll(IssueAssignPlugin.getLoggingProperties());
+    extensions.addAll(IssueAssignPlugin.getPerformanceProperties());
     return extensions;
   }
 }
@@ -19,30 +19,30 @@
  */
 package org.sonar.plugins.issueassign;
 
+import org.picocontainer.Startable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.sonar.api.batch.SonarIndex;
 import org.sonar.api.config.Settings;
 import org.sonar.api.issue.Issue;
 import org.sonar.api.issue.IssueHandler;
 import org.sonar.api.user.User;
-import org.sonar.api.user.UserFinder;
 import org.sonar.plugins.issueassign.exception.IssueAssignPluginException;
-import org.sonar.plugins.issueassign.measures.MeasuresFinder;
 import org.sonar.plugins.issueassign.util.DiagnosticLogger;
 
-public class IssueAssigner implements IssueHandler {
+public class IssueAssigner implements IssueHandler, Startable {
 
   private static final Logger LOG = LoggerFactory.getLogger(IssueAssigner.class);
   private final Settings settings;
   private final Blame blame;
   private final Assign assign;
   private final DiagnosticLogger logger;
+  private final AssignmentCache assignmentCache;
 
-  public IssueAssigner(final Settings settings, final UserFinder userFinder,
-                       final SonarIndex sonarIndex, final DiagnosticLogger logger) {
-    this.blame = new Blame(new ResourceFinder(sonarIndex), new MeasuresFinder(sonarIndex), settings);
-    this.assign = new Assign(settings, userFinder);
+  public IssueAssigner(final Settings settings, final Users users, final Blame blame,
+                       final DiagnosticLogger logger, final AssignmentCache assignmentCache) {
+    this.blame = blame;
+    this.assignmentCache = assignmentCache;
+    this.assign = new Assign(settings, users);
     this.settings = settings;
     this.logger = logger;
   }
@@ -58,11 +58,16 @@ public class IssueAssigner implements IssueHandler {
     LOG.debug("Found new issue: ", issue.key());
 
     try {
-      final IssueWrapper issueWrapper = new IssueWrapper(issue, this.settings, this.blame);
-      if (issueWrapper.isAssignable()) {
-        this.assignIssue(context, issue);
+      final AssignmentCache.Decision decision = this.assignmentCache.lookup(issue);
+      final IssueWrapper issueWrapper = new IssueWrapper(issue, this.settings, this.blame,
+        decision == null ? null : decision.getCommitTime());
+      if (!issueWrapper.isAssignable()) {
+        logger.logReason(issueWrapper);
+        this.assignmentCache.record(issue, issueWrapper.getCommitTime(), null);
+      } else if (decision != null && decision.getAssignee() != null) {
+        this.assign(context, issue, decision.getAssignee(), issueWrapper);
       } else {
-          logger.logReason(issueWrapper);
+        this.assign(context, issue, this.findAssignee(issue), issueWrapper);
       }
     } catch (final IssueAssignPluginException pluginException) {
       LOG.warn("Unable to assign issue: {}", issue.key());
@@ -71,7 +76,7 @@ public class IssueAssigner implements IssueHandler {
     }
   }
 
-  private void assignIssue(final Context context, final Issue issue) throws IssueAssignPluginException {
+  private User findAssignee(final Issue issue) throws IssueAssignPluginException {
 
     final boolean assignToLastCommitter = this.settings.getBoolean(IssueAssignPlugin.PROPERTY_ASSIGN_TO_LAST_COMMITTER);
     final String author = blame.getScmAuthorForIssue(issue, assignToLastCommitter);
@@ -85,8 +90,26 @@ public class IssueAssigner implements IssueHandler {
       assignee = assign.getAssignee(author);
     }
 
+    return assignee;
+  }
+
+  private void assign(final Context context, final Issue issue, final User assignee, final IssueWrapper issueWrapper) {
     this.logger.logAssign(issue.key(), assignee.login());
     context.assign(assignee);
+    this.assignmentCache.record(issue, issueWrapper.getCommitTime(), assignee);
+  }
+
+  @Override
+  public void start() {
+    // nothing to do
+  }
+
+  @Override
+  public void stop() {
+    if (isPluginEnabled()) {
+      this.blame.logCacheStatistics();
+    }
+    this.blame.release();
   }
 
   private boolean isPluginEnabled() {
@@ -40,11 +40,20 @@ public class IssueWrapper {
     private Settings settings;
     private Blame blame;
     private NoAssignReason noAssignReason;
+    private Long commitTime;
 
     public IssueWrapper(final Issue sonarIssue, final Settings settings, final Blame blame) {
+        this(sonarIssue, settings, blame, null);
+    }
+
+    /**
+     * @param commitTime commit time already known for the issue, or null to look it up through blame.
+     */
+    public IssueWrapper(final Issue sonarIssue, final Settings settings, final Blame blame, final Long commitTime) {
         this.sonarIssue = sonarIssue;
         this.settings = settings;
         this.blame = blame;
+        this.commitTime = commitTime;
     }
 
     public NoAssignReason getNoAssignReason() {
@@ -58,6 +67,13 @@ public class IssueWrapper {
                this.issueCreatedAfterCutoffDate();
     }
 
+    /**
+     * Commit time the issue was blamed on, or null if {@link #isAssignable()} did not need it.
+     */
+    public Long getCommitTime() {
+        return this.commitTime;
+    }
+
     public String getKey() {
         return this.sonarIssue.key();
     }
@@ -100,16 +116,20 @@ public class IssueWrapper {
     private boolean issueCreatedAfterCutoffDate() throws IssueAssignPluginException {
 
         boolean result = true;
-        final Date issueCreatedDate = this.blame.getCommitDateForIssue(sonarIssue);
         final String issueCutoffDatePref = this.settings.getString(IssueAssignPlugin.PROPERTY_ISSUE_CUTOFF_DATE);
         final DateFormat df = new SimpleDateFormat(ISSUE_CUTOFF_DATE_FORMAT);
 
         try {
             if (issueCutoffDatePref != null) {
+                // the commit time is only loaded when there is a cutoff date to compare it with
+                if (this.commitTime == null) {
+                    this.commitTime = this.blame.getCommitTimeForIssue(sonarIssue);
+                }
+                final long issueCreatedTime = this.commitTime;
                 final Date cutoffDate = df.parse(issueCutoffDatePref);
 
                 LOG.debug("Issue cutoff date is {}", cutoffDate);
-                result = this.createdAfterCutoffDate(sonarIssue, cutoffDate, issueCreatedDate);
+                result = this.createdAfterCutoffDate(sonarIssue, cutoffDate, issueCreatedTime);
             }
         } catch (ParseException e) {
             LOG.error("Unable to parse date: " + issueCutoffDatePref);
@@ -118,9 +138,9 @@ public class IssueWrapper {
         return this.noAssignReason(result, NoAssignReason.BEFORE_CUTOFF_DATE);
     }
 
-    private boolean createdAfterCutoffDate(final Issue issue, final Date cutoffDate, final Date issueCreatedDate)
+    private boolean createdAfterCutoffDate(final Issue issue, final Date cutoffDate, final long issueCreatedTime)
             throws IssueAssignPluginException {
-        boolean createdAfter = issueCreatedDate.after(cutoffDate);
+        boolean createdAfter = issueCreatedTime > cutoffDate.getTime();
 
         if (createdAfter) {
             LOG.debug("Issue {} created after cutoff date, will attempt to assign.", issue.key());
@@ -0,0 +1,125 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.picocontainer.Startable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.config.Settings;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationFilterSupport;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Arms a collection usage threshold on the heap memory pools for the duration of the module analysis and releases part
+ * of the plugin caches whenever one of them is still crossed after a garbage collection, so that garbage awaiting
+ * collection does not count.  Pools that already have a threshold, set by someone else, are left alone.
+ */
+public class MemoryGovernor implements BatchExtension, Startable, NotificationListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MemoryGovernor.class);
+  private static final int PERCENT = 100;
+
+  private final Settings settings;
+  private final Blame blame;
+  private final Users users;
+  private final List<MemoryPoolMXBean> armedPools = new ArrayList<MemoryPoolMXBean>();
+
+  public MemoryGovernor(final Settings settings, final Blame blame, final Users users) {
+    this.settings = settings;
+    this.blame = blame;
+    this.users = users;
+  }
+
+  @Override
+  public void start() {
+    final int threshold = this.settings.getInt(IssueAssignPlugin.PROPERTY_MEMORY_THRESHOLD);
+    if (threshold <= 0 || threshold >= PERCENT || !this.settings.getBoolean(IssueAssignPlugin.PROPERTY_ENABLED)) {
+      return;
+    }
+
+    for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      final MemoryUsage usage = pool.getUsage();
+      if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && usage != null
+        && usage.getMax() > 0 && pool.getCollectionUsageThreshold() == 0) {
+        pool.setCollectionUsageThreshold(usage.getMax() / PERCENT * threshold);
+        this.armedPools.add(pool);
+        LOG.debug("Watching heap pool {} for usage above {}%", pool.getName(), threshold);
+      }
+    }
+
+    if (!this.armedPools.isEmpty()) {
+      final NotificationFilterSupport filter = new NotificationFilterSupport();
+      filter.enableType(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED);
+      emitter().addNotificationListener(this, filter, null);
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (this.armedPools.isEmpty()) {
+      return;
+    }
+    for (final MemoryPoolMXBean pool : this.armedPools) {
+      pool.setCollectionUsageThreshold(0);
+    }
+    this.armedPools.clear();
+    try {
+      emitter().removeNotificationListener(this);
+    } catch (final ListenerNotFoundException e) {
+      LOG.debug("Memory listener already removed", e);
+    }
+  }
+
+  @Override
+  public void handleNotification(final Notification notification, final Object handback) {
+    final MemoryNotificationInfo info = MemoryNotificationInfo.from((CompositeData) notification.getUserData());
+    LOG.warn("Heap pool {} is above its usage threshold after a garbage collection ({} MB used), releasing issue "
+      + "assignment caches",
+      info.getPoolName(), info.getUsage().getUsed() / (1024 * 1024));
+    this.relieve();
+  }
+
+  void relieve() {
+    final long blameBytes = this.blame.shrinkCache();
+    final int userCount = this.users.releaseCache();
+    LOG.warn("Released {} KB of cached SCM data and {} cached user lookups", blameBytes / 1024, userCount);
+  }
+
+  boolean isArmed() {
+    return !this.armedPools.isEmpty();
+  }
+
+  private static NotificationEmitter emitter() {
+    return (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+  }
+}
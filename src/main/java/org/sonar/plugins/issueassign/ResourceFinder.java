@@ -21,25 +21,45 @@ package org.sonar.plugins.issueassign;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
 import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.resources.Directory;
 import org.sonar.api.resources.File;
+import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
 import org.sonar.plugins.issueassign.exception.ResourceNotFoundException;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
-public class ResourceFinder {
+public class ResourceFinder implements BatchExtension {
 
   private static final Logger LOG = LoggerFactory.getLogger(ResourceFinder.class);
   private static final int RESOURCE_KEY_INDEX_N0 = 2;
   private SonarIndex sonarIndex;
+  private final FileSystem fileSystem;
+  private final Project module;
+  // effective key -> resource, built from the whole index on the first direct lookup miss
+  private Map<String, Resource> resourcesByEffectiveKey;
 
   public ResourceFinder(final SonarIndex sonarIndex) {
+    this(sonarIndex, null, null);
+  }
+
+  public ResourceFinder(final SonarIndex sonarIndex, final FileSystem fileSystem, final Project module) {
     this.sonarIndex = sonarIndex;
+    this.fileSystem = fileSystem;
+    this.module = module;
   }
 
   public Resource find(final String componentKey) throws ResourceNotFoundException {
-    final Resource resource = getResource(componentKey);
+    Resource resource = getModuleResource(componentKey);
+    if (resource == null) {
+      resource = getResource(componentKey);
+    }
     if (resource == null) {
       LOG.debug("Cannot lookup resource directly, searching entire index...");
       return searchAllResources(componentKey);
@@ -47,40 +67,96 @@ public class ResourceFinder {
     return resource;
   }
 
+  /**
+   * Returns the input file of the current module with the given component key, or null if there is none.
+   */
+  public InputFile findInputFile(final String componentKey) {
+    final String relativePath = this.getModuleRelativePath(componentKey);
+    return relativePath == null ? null : this.fileSystem.inputFile(this.fileSystem.predicates().hasRelativePath(relativePath));
+  }
+
+  private Resource getModuleResource(final String componentKey) {
+    if (this.module != null && componentKey.equals(this.module.getEffectiveKey())) {
+      return this.module;
+    }
+    final String relativePath = this.getModuleRelativePath(componentKey);
+    if (relativePath == null) {
+      return null;
+    }
+
+    final Resource resource;
+    if (this.fileSystem.inputFile(this.fileSystem.predicates().hasRelativePath(relativePath)) != null) {
+      resource = this.sonarIndex.getResource(File.create(relativePath));
+    } else if (this.fileSystem.inputDir(this.fileSystem.resolvePath(relativePath)) != null) {
+      resource = this.sonarIndex.getResource(Directory.create(relativePath));
+    } else {
+      return null;
+    }
+    LOG.debug("Resolved [{}] through the module file system", componentKey);
+    return resource;
+  }
+
+  // component key format: moduleEffectiveKey:relativePath, where the module key may itself contain a branch
+  private String getModuleRelativePath(final String componentKey) {
+    if (this.fileSystem == null || this.module == null || this.module.getEffectiveKey() == null) {
+      return null;
+    }
+    final String moduleKey = this.module.getEffectiveKey();
+    if (!componentKey.startsWith(moduleKey) || componentKey.length() <= moduleKey.length() + 1
+      || componentKey.charAt(moduleKey.length()) != ':') {
+      return null;
+    }
+    return componentKey.substring(moduleKey.length() + 1);
+  }
+
   private Resource getResource(final String componentKey) {
-    try {
-      final String resourceKey = getResourceKeyFromComponentKey(componentKey);
-      final Resource javaResource = this.sonarIndex.getResource(File.create(resourceKey));
-      LOG.debug("Found resource with key: [" + javaResource.getKey() + "]");
-      return javaResource;
-    } catch (final Exception e) {
+    final String resourceKey = getResourceKeyFromComponentKey(componentKey);
+    if (resourceKey == null) {
       return null;
     }
+    final Resource javaResource = this.sonarIndex.getResource(File.create(resourceKey));
+    if (javaResource != null) {
+      LOG.debug("Found resource with key: [" + javaResource.getKey() + "]");
+    }
+    return javaResource;
   }
 
   // component key format: org:project:resourceKey
   private String getResourceKeyFromComponentKey(final String componentKey) {
-    return componentKey.split(":")[RESOURCE_KEY_INDEX_N0];
+    final String[] keyParts = componentKey.split(":");
+    return keyParts.length > RESOURCE_KEY_INDEX_N0 ? keyParts[RESOURCE_KEY_INDEX_N0] : null;
   }
 
   private Resource searchAllResources(final String componentKey) throws ResourceNotFoundException {
-    final Collection<Resource> resources = this.sonarIndex.getResources();
-
-    for (final Resource resource : resources) {
-      if (matches(componentKey, resource)) {
-        LOG.debug("Found resource for [" + componentKey + "]");
-        LOG.debug("Resource class type: [" + resource.getClass().getName() + "]");
-        LOG.debug("Resource key: [" + resource.getKey() + "]");
-        LOG.debug("Resource id: [" + resource.getId() + "]");
-        return resource;
-      }
+    final Resource resource = this.getResourcesByEffectiveKey().get(componentKey);
+
+    if (resource != null) {
+      LOG.debug("Found resource for [" + componentKey + "]");
+      LOG.debug("Resource class type: [" + resource.getClass().getName() + "]");
+      LOG.debug("Resource key: [" + resource.getKey() + "]");
+      LOG.debug("Resource id: [" + resource.getId() + "]");
+      return resource;
     }
 
     LOG.warn("No resource found for component [" + componentKey + "]");
     throw new ResourceNotFoundException();
   }
 
-  private boolean matches(final String componentKey, final Resource resource) {
-    return resource.getEffectiveKey().equals(componentKey) && resource.getId() != null;
+  private Map<String, Resource> getResourcesByEffectiveKey() {
+    if (this.resourcesByEffectiveKey == null) {
+      final Collection<Resource> resources = this.sonarIndex.getResources();
+      this.resourcesByEffectiveKey = new HashMap<String, Resource>(resources.size() * 2);
+      for (final Resource resource : resources) {
+        if (isIndexable(resource) && !this.resourcesByEffectiveKey.containsKey(resource.getEffectiveKey())) {
+          this.resourcesByEffectiveKey.put(resource.getEffectiveKey(), resource);
+        }
+      }
+      LOG.debug("Indexed {} of {} resources by effective key", this.resourcesByEffectiveKey.size(), resources.size());
+    }
+    return this.resourcesByEffectiveKey;
+  }
+
+  private boolean isIndexable(final Resource resource) {
+    return resource.getEffectiveKey() != null && resource.getId() != null;
   }
 }
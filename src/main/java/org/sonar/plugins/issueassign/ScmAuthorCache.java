@@ -0,0 +1,188 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.apache.commons.lang.StringUtils;
+import org.picocontainer.Startable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.batch.bootstrap.ProjectReactor;
+import org.sonar.api.config.Settings;
+import org.sonar.api.user.User;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SCM author resolutions of previous analyses, found or not, kept with the time they were made in a file of the
+ * assignment cache directory.  Entries expire after the configured TTL and are reported stale past three quarters
+ * of it, so they can be revalidated before they expire.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class ScmAuthorCache implements BatchExtension, Startable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ScmAuthorCache.class);
+  private static final String FILE_NAME = "scm-authors.txt";
+  private static final String HEADER = "#scm-authors 1";
+  private static final long MILLIS_PER_HOUR = 60L * 60L * 1000L;
+
+  private final CacheFile file;
+  private final long ttl;
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+  public ScmAuthorCache(final Settings settings, final ProjectReactor reactor) {
+    this(getFile(settings, reactor), settings.getInt(IssueAssignPlugin.PROPERTY_USER_CACHE_TTL) * MILLIS_PER_HOUR);
+  }
+
+  ScmAuthorCache(final File file, final long ttl) {
+    this.file = ttl > 0 && file != null ? new CacheFile(file, HEADER) : null;
+    this.ttl = ttl;
+  }
+
+  @Override
+  public void start() {
+    if (this.file != null && this.file.exists()) {
+      this.load();
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (this.file != null) {
+      this.save();
+    }
+  }
+
+  public boolean isEnabled() {
+    return this.file != null;
+  }
+
+  /**
+   * Returns the unexpired resolution of the given key, or null.
+   */
+  public synchronized Entry get(final String key) {
+    final Entry entry = this.entries.get(key);
+    if (entry == null || this.age(entry) >= this.ttl) {
+      return null;
+    }
+    return entry;
+  }
+
+  /**
+   * Records the resolution of the given key, with a null user when no user was found.
+   */
+  public synchronized void put(final String key, final User user) {
+    if (this.isEnabled()) {
+      this.entries.put(key, new Entry(user == null ? null : user.login(), user == null ? null : user.name(),
+        System.currentTimeMillis()));
+    }
+  }
+
+  public synchronized boolean isStale(final Entry entry) {
+    return this.age(entry) >= this.ttl / 4 * 3;
+  }
+
+  synchronized int size() {
+    return this.entries.size();
+  }
+
+  private long age(final Entry entry) {
+    return System.currentTimeMillis() - entry.resolvedAt;
+  }
+
+  private static File getFile(final Settings settings, final ProjectReactor reactor) {
+    final String directory = settings.getString(IssueAssignPlugin.PROPERTY_ASSIGNMENT_CACHE_DIR);
+    if (StringUtils.isBlank(directory)) {
+      return null;
+    }
+    File dir = new File(directory);
+    if (!dir.isAbsolute()) {
+      dir = new File(reactor.getRoot().getBaseDir(), directory);
+    }
+    return new File(dir, FILE_NAME);
+  }
+
+  private synchronized void load() {
+    try {
+      final List<String[]> records = this.file.read(4);
+      if (records == null) {
+        LOG.info("Ignoring SCM author cache {} of an unknown format", this.file);
+        return;
+      }
+      for (final String[] fields : records) {
+        final Entry entry = new Entry(CacheFile.decode(fields[1]), CacheFile.decode(fields[2]),
+          Long.parseLong(fields[3]));
+        if (this.age(entry) < this.ttl) {
+          this.entries.put(fields[0], entry);
+        }
+      }
+      LOG.debug("Loaded {} SCM author resolutions from {}", this.entries.size(), this.file);
+    } catch (final IOException e) {
+      LOG.warn("Unable to read the SCM author cache " + this.file, e);
+      this.entries.clear();
+    } catch (final NumberFormatException e) {
+      LOG.warn("Corrupt SCM author cache " + this.file + ", ignoring it");
+      this.entries.clear();
+    }
+  }
+
+  private synchronized void save() {
+    final List<String[]> records = new ArrayList<String[]>(this.entries.size());
+    for (final Map.Entry<String, Entry> mapEntry : this.entries.entrySet()) {
+      final Entry entry = mapEntry.getValue();
+      if (this.age(entry) < this.ttl) {
+        records.add(new String[] {mapEntry.getKey(), CacheFile.encode(entry.login), CacheFile.encode(entry.name),
+          Long.toString(entry.resolvedAt)});
+      }
+    }
+    try {
+      this.file.write(records);
+      LOG.debug("Saved {} SCM author resolutions to {}", records.size(), this.file);
+    } catch (final IOException e) {
+      LOG.warn("Unable to save the SCM author cache " + this.file, e);
+    }
+  }
+
+  public static final class Entry {
+
+    private final String login;
+    private final String name;
+    private final long resolvedAt;
+
+    Entry(final String login, final String name, final long resolvedAt) {
+      this.login = login;
+      this.name = name;
+      this.resolvedAt = resolvedAt;
+    }
+
+    /**
+     * The user the SCM author resolved to, or null if it matched no user.
+     */
+    public User getUser() {
+      return this.login == null ? null : new CachedUser(this.login, this.name);
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Ordered list of username extraction rules compiled into a single pattern.  The first rule, in configuration order,
+ * that matches anywhere in the SCM username wins, and the username is its first capturing group.
+ */
+public final class UsernameExtractor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(UsernameExtractor.class);
+
+  private final Pattern pattern;
+  // group of the combined pattern wrapping each valid rule
+  private final int[] ruleGroups;
+  // configuration index of each valid rule
+  private final int[] ruleIndexes;
+
+  private UsernameExtractor(final Pattern pattern, final int[] ruleGroups, final int[] ruleIndexes) {
+    this.pattern = pattern;
+    this.ruleGroups = ruleGroups;
+    this.ruleIndexes = ruleIndexes;
+  }
+
+  /**
+   * Compiles the given rules, each a regular expression with at least one capturing group.  Rules that are not valid
+   * regular expressions are logged and skipped.
+   */
+  public static UsernameExtractor compile(final String... rules) {
+    final StringBuilder combined = new StringBuilder("^(?:");
+    final List<Integer> groups = new ArrayList<Integer>();
+    final List<Integer> indexes = new ArrayList<Integer>();
+    int group = 1;
+    for (int i = 0; i < rules.length; i++) {
+      final int ruleGroupCount;
+      try {
+        ruleGroupCount = Pattern.compile(rules[i]).matcher("").groupCount();
+      } catch (final PatternSyntaxException e) {
+        LOG.warn("Skipping invalid SCM username extraction rule {}: {}", rules[i], e.getDescription());
+        continue;
+      }
+      if (!groups.isEmpty()) {
+        combined.append('|');
+      }
+      // a lazy prefix per alternative makes each rule a find(), tried in order rather than leftmost match first;
+      // the non-capturing group keeps inline flags of the rule, such as (?i), to the rule itself
+      combined.append("(?s:.*?)((?:").append(rules[i]).append("))");
+      groups.add(group);
+      indexes.add(i);
+      group += ruleGroupCount + 1;
+    }
+    combined.append(')');
+    return new UsernameExtractor(Pattern.compile(combined.toString()), toArray(groups), toArray(indexes));
+  }
+
+  /**
+   * Returns the rule that matched and the username it extracted, or null if no rule matches.
+   */
+  public Extraction extract(final String scmUserName) {
+    final Matcher matcher = this.pattern.matcher(scmUserName);
+    if (!matcher.find()) {
+      return null;
+    }
+    for (int rule = 0; rule < this.ruleGroups.length; rule++) {
+      if (matcher.start(this.ruleGroups[rule]) >= 0) {
+        final int usernameGroup = this.ruleGroups[rule] + 1;
+        final boolean hasGroup = rule + 1 < this.ruleGroups.length
+          ? usernameGroup < this.ruleGroups[rule + 1] : usernameGroup <= matcher.groupCount();
+        return new Extraction(this.ruleIndexes[rule],
+          hasGroup ? matcher.group(usernameGroup) : matcher.group(this.ruleGroups[rule]));
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Number of valid rules.
+   */
+  public int getRuleCount() {
+    return this.ruleGroups.length;
+  }
+
+  private static int[] toArray(final List<Integer> values) {
+    final int[] array = new int[values.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = values.get(i);
+    }
+    return array;
+  }
+
+  public static final class Extraction {
+
+    private final int rule;
+    private final String username;
+
+    Extraction(final int rule, final String username) {
+      this.rule = rule;
+      this.username = username;
+    }
+
+    /**
+     * Zero-based configuration index of the rule that matched, invalid rules included.
+     */
+    public int getRule() {
+      return this.rule;
+    }
+
+    public String getUsername() {
+      return this.username;
+    }
+  }
+}
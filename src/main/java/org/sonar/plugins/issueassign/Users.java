@@ -20,39 +20,208 @@
 package org.sonar.plugins.issueassign;
 
 import org.apache.commons.lang.StringUtils;
+import org.picocontainer.Startable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.InstantiationStrategy;
 import org.sonar.api.config.Settings;
 import org.sonar.api.user.User;
 import org.sonar.api.user.UserFinder;
 import org.sonar.api.user.UserQuery;
 import org.sonar.plugins.issueassign.exception.SonarUserNotFoundException;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class Users {
+/**
+ * Resolves SCM authors to SonarQube users.  Shared by all the modules of the analysis, so the user list is only
+ * fetched and indexed by email once, and each distinct SCM author is only resolved once, whether found or not.
+ * Emails are first looked up one query at a time; the whole directory is only indexed past a number of distinct emails.
+ * With an author cache, resolutions are also kept across analyses and revalidated in the background near expiry.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class Users implements BatchExtension, Startable {
 
   private static final Logger LOG = LoggerFactory.getLogger(Users.class);
+  private static final int REVALIDATION_QUEUE_SIZE = 256;
+  private static final long REVALIDATION_GRACE_SECONDS = 5;
   private static final Pattern EMBEDDED_EMAIL_PATTERN = Pattern.compile(".*<.*@.*>.*");
   private final UserFinder userFinder;
   private Map<String, User> emailToUserMap;
+  // extraction rules and raw SCM author -> resolved user, null when not found
+  private final Map<String, User> resolvedUsers = new HashMap<String, User>();
+  // email -> user found by a targeted query, null when none, until all users are indexed by email
+  private final Map<String, User> emailLookups = new HashMap<String, User>();
+  // extraction rules, one per line -> compiled extractor
+  private final Map<String, UsernameExtractor> extractors = new HashMap<String, UsernameExtractor>();
   private final Settings settings;
+  private final ScmAuthorCache authorCache;
+  private ExecutorService revalidator;
+  private long hits;
+  private long misses;
+  private long persistentHits;
 
   public Users(final UserFinder userFinder, final Settings settings) {
+    this(userFinder, settings, null);
+  }
+
+  public Users(final UserFinder userFinder, final Settings settings, final ScmAuthorCache authorCache) {
     this.userFinder = userFinder;
     this.settings = settings;
+    this.authorCache = authorCache != null && authorCache.isEnabled() ? authorCache : null;
   }
 
   public User getSonarUser(final String userNameFromScm) throws SonarUserNotFoundException {
+    return this.getSonarUser(userNameFromScm, this.settings);
+  }
+
+  /**
+   * Resolves the SCM author with the username extraction configured in the given, usually module level, settings.
+   */
+  public User getSonarUser(final String userNameFromScm, final Settings moduleSettings) throws SonarUserNotFoundException {
+    final String[] rules = getExtractionRules(moduleSettings);
+    final String rulesKey = StringUtils.join(rules, '\n');
+    final String key = rulesKey + '\n' + userNameFromScm;
+
+    synchronized (this) {
+      if (this.resolvedUsers.containsKey(key)) {
+        this.hits++;
+        return found(this.resolvedUsers.get(key));
+      }
+      this.misses++;
+    }
+
+    final UsernameExtractor extractor = rules.length == 0 ? null : this.getExtractor(rulesKey, rules);
+    final ScmAuthorCache.Entry persisted = this.authorCache == null ? null : this.authorCache.get(key);
+    if (persisted != null) {
+      final User persistedUser = persisted.getUser();
+      synchronized (this) {
+        this.persistentHits++;
+        this.resolvedUsers.put(key, persistedUser);
+      }
+      if (this.authorCache.isStale(persisted)) {
+        this.revalidate(key, userNameFromScm, extractor);
+      }
+      return found(persistedUser);
+    }
+
+    return found(this.resolveAndRecord(key, userNameFromScm, extractor));
+  }
+
+  @Override
+  public void start() {
+    // nothing to do
+  }
+
+  @Override
+  public void stop() {
+    final ExecutorService executor;
+    synchronized (this) {
+      executor = this.revalidator;
+      this.revalidator = null;
+    }
+    if (executor != null) {
+      // let queued revalidations finish, so the author cache saves their results
+      executor.shutdown();
+      try {
+        if (!executor.awaitTermination(REVALIDATION_GRACE_SECONDS, TimeUnit.SECONDS)) {
+          executor.shutdownNow();
+        }
+      } catch (final InterruptedException e) {
+        executor.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+    }
+    this.logStatistics();
+  }
+
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * Misses answered by the resolutions of previous analyses.
+   */
+  public synchronized long getPersistentHits() {
+    return this.persistentHits;
+  }
+
+  public synchronized void logStatistics() {
+    if (this.hits + this.misses > 0) {
+      LOG.info("User cache: {} hits, {} misses ({} from previous analyses), {} SCM authors resolved",
+        new Object[] {this.hits, this.misses, this.persistentHits, this.resolvedUsers.size()});
+    }
+  }
+
+  private static User found(final User user) throws SonarUserNotFoundException {
+    if (user == null) {
+      throw new SonarUserNotFoundException();
+    }
+    return user;
+  }
+
+  // resolves the author again in the background, so a renamed user is picked up before its entry expires
+  private void revalidate(final String key, final String userNameFromScm, final UsernameExtractor extractor) {
+    final ExecutorService executor;
+    synchronized (this) {
+      if (this.revalidator == null) {
+        this.revalidator = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<Runnable>(REVALIDATION_QUEUE_SIZE), new RevalidatorThreadFactory(),
+          new ThreadPoolExecutor.DiscardPolicy());
+      }
+      executor = this.revalidator;
+    }
+
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        Users.this.resolveAndRecord(key, userNameFromScm, extractor);
+        LOG.debug("Revalidated SCM author [{}]", userNameFromScm);
+      }
+    });
+  }
+
+  // misses of targeted email searches are not persisted, as the full index of a later analysis may still resolve them
+  private User resolveAndRecord(final String key, final String userNameFromScm, final UsernameExtractor extractor) {
+    User user = null;
+    boolean confirmed = true;
+    try {
+      user = this.resolve(userNameFromScm, extractor);
+    } catch (final UnconfirmedMissException e) {
+      confirmed = false;
+    } catch (final SonarUserNotFoundException e) {
+      // remembered as not found
+    }
+    synchronized (this) {
+      this.resolvedUsers.put(key, user);
+    }
+    if (this.authorCache != null && confirmed) {
+      this.authorCache.put(key, user);
+    }
+    return user;
+  }
+
+  private User resolve(final String userNameFromScm, final UsernameExtractor extractor) throws SonarUserNotFoundException {
 
     String sonarUserName;
 
-    if (this.isExtractSonarUserFromScmUser()) {
-      sonarUserName = this.extractSonarUserWithRegEx(userNameFromScm);
+    if (extractor != null) {
+      sonarUserName = extractSonarUser(userNameFromScm, extractor);
     } else {
       sonarUserName = userNameFromScm;
     }
@@ -80,26 +249,45 @@ public class Users {
     return sonarUser;
   }
 
-  private String extractSonarUserWithRegEx(final String userName) throws SonarUserNotFoundException {
-    final String regex = this.getExtractRegex();
-    final Pattern p = Pattern.compile(regex);
-    final Matcher m = p.matcher(userName);
+  private static String extractSonarUser(final String userName, final UsernameExtractor extractor)
+    throws SonarUserNotFoundException {
+    final UsernameExtractor.Extraction extraction = extractor.extract(userName);
 
-    if (m.find()) {
-      LOG.debug("Extracted user {} using regex {}", userName, regex);
-      return m.group(1);
+    if (extraction != null) {
+      LOG.debug("Extracted user {} from {} using rule {}",
+        new Object[] {extraction.getUsername(), userName, extraction.getRule() + 1});
+      return extraction.getUsername();
     }
 
-    LOG.warn("SonarQube user not found using regex {}", regex);
+    LOG.warn("SonarQube user not found using any of the {} extraction rules for {}", extractor.getRuleCount(), userName);
     throw new SonarUserNotFoundException();
   }
 
-  private String getExtractRegex() {
-    return this.settings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME);
+  // null when none of the rules is a valid regular expression, in which case SCM usernames are used as they are
+  private synchronized UsernameExtractor getExtractor(final String rulesKey, final String[] rules) {
+    if (!this.extractors.containsKey(rulesKey)) {
+      final UsernameExtractor extractor = UsernameExtractor.compile(rules);
+      this.extractors.put(rulesKey, extractor.getRuleCount() == 0 ? null : extractor);
+    }
+    return this.extractors.get(rulesKey);
   }
 
-  private boolean isExtractSonarUserFromScmUser() {
-    return StringUtils.isNotEmpty(this.getExtractRegex());
+  // the single regex of the original property first, then the rules of the list, one per line
+  private static String[] getExtractionRules(final Settings settings) {
+    final List<String> rules = new ArrayList<String>();
+    final String regex = settings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME);
+    if (StringUtils.isNotEmpty(regex)) {
+      rules.add(regex);
+    }
+    final String ruleList = settings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_RULES);
+    if (ruleList != null) {
+      for (final String rule : ruleList.split("\r?\n")) {
+        if (StringUtils.isNotBlank(rule)) {
+          rules.add(rule);
+        }
+      }
+    }
+    return rules.toArray(new String[rules.size()]);
   }
 
   // a cheap solution, but may be enough.
@@ -120,7 +308,17 @@ public class Users {
     return tempUserName;
   }
 
-  private User getSonarUserByEmail(final String email) throws SonarUserNotFoundException {
+  private synchronized User getSonarUserByEmail(final String email) throws SonarUserNotFoundException {
+    if (this.emailToUserMap == null && !this.shouldIndexAllUsers()) {
+      final User user = this.findSonarUserByEmail(email);
+      if (user == null) {
+        // the search only covers logins and names, so users whose login and name do not contain the local part of
+        // their email are missed until all users are indexed
+        throw new UnconfirmedMissException();
+      }
+      return user;
+    }
+
     if (this.emailToUserMap == null) {
       this.initialiseUserMap();
     }
@@ -132,7 +330,50 @@ public class Users {
     return user;
   }
 
+  /**
+   * Drops the email index and the resolved SCM authors, rebuilt on demand.  Returns the number of entries they held.
+   */
+  public synchronized int releaseCache() {
+    final int size = (this.emailToUserMap == null ? 0 : this.emailToUserMap.size()) + this.resolvedUsers.size()
+      + this.emailLookups.size();
+    this.emailToUserMap = null;
+    this.resolvedUsers.clear();
+    this.emailLookups.clear();
+    return size;
+  }
+
+  // fetching the whole user directory only pays off once enough distinct emails were looked up one by one, found or not
+  private boolean shouldIndexAllUsers() {
+    final int threshold = this.settings.getInt(IssueAssignPlugin.PROPERTY_EMAIL_INDEX_THRESHOLD);
+    return threshold <= 0 || this.emailLookups.size() >= threshold;
+  }
+
+  // the user query searches logins and names, so search for the local part and keep the exact email match
+  private User findSonarUserByEmail(final String email) {
+    if (this.emailLookups.containsKey(email)) {
+      return this.emailLookups.get(email);
+    }
+
+    final UserQuery userQuery = UserQuery.builder().searchText(StringUtils.substringBefore(email, "@")).build();
+    for (final User user : this.userFinder.find(userQuery)) {
+      if (email.equals(user.email())) {
+        LOG.debug("Targeted lookup of email [{}] found {}", email, user.login());
+        this.emailLookups.put(email, user);
+        return user;
+      }
+    }
+    LOG.debug("Targeted lookup of email [{}] found no user", email);
+    this.emailLookups.put(email, null);
+    return null;
+  }
+
   private void initialiseUserMap() {
+    if (!this.emailLookups.isEmpty()) {
+      LOG.info("Indexing all SonarQube users by email after {} targeted lookups", this.emailLookups.size());
+      this.emailLookups.clear();
+      // authors the targeted searches missed are resolved again against the index
+      this.resolvedUsers.values().removeAll(Collections.singleton(null));
+    }
     this.emailToUserMap = new HashMap<String, User>();
     final List<User> sonarUsers = this.getAllSonarUsers();
 
@@ -149,4 +390,18 @@ public class Users {
     final UserQuery userQuery = UserQuery.builder().build();
     return this.userFinder.find(userQuery);
   }
+
+  private static final class RevalidatorThreadFactory implements ThreadFactory {
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+      final Thread thread = new Thread(runnable, "issueassign-user-revalidator");
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+  // not found by a targeted email search, which does not cover emails
+  private static final class UnconfirmedMissException extends SonarUserNotFoundException {
+  }
 }
@@ -0,0 +1,74 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+/**
+ * One array per SCM measure, line N at index N - 1.
+ */
+final class ColumnarLineBlame implements LineBlame {
+
+  private final int[] authorIds;
+  private final long[] commitTimes;
+  private final int[] revisionIds;
+  private final int lineCount;
+
+  ColumnarLineBlame(final int[] authorIds, final long[] commitTimes, final int[] revisionIds) {
+    this.authorIds = authorIds;
+    this.commitTimes = commitTimes;
+    this.revisionIds = revisionIds;
+    this.lineCount = Math.max(commitTimes.length, Math.max(authorIds.length, revisionIds.length));
+  }
+
+  @Override
+  public int lineCount() {
+    return this.lineCount;
+  }
+
+  @Override
+  public int authorId(final int line) {
+    return symbolAt(this.authorIds, line);
+  }
+
+  @Override
+  public int revisionId(final int line) {
+    return symbolAt(this.revisionIds, line);
+  }
+
+  @Override
+  public long commitTime(final int line) {
+    if (line < 1 || line > this.commitTimes.length) {
+      return ScmMeasures.NO_COMMIT_TIME;
+    }
+    return this.commitTimes[line - 1];
+  }
+
+  @Override
+  public long estimatedBytes() {
+    return MemorySizes.ofIntArray(this.authorIds.length) + MemorySizes.ofLongArray(this.commitTimes.length)
+      + MemorySizes.ofIntArray(this.revisionIds.length);
+  }
+
+  private static int symbolAt(final int[] column, final int line) {
+    if (line < 1 || line > column.length) {
+      return ScmSymbolTable.NO_SYMBOL;
+    }
+    return column[line - 1];
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+import org.sonar.api.utils.DateUtils;
+
+/**
+ * Forward-only reader over a "line=value;line=value" measure, as written by KeyValueFormat.
+ */
+final class KeyValueLineReader {
+
+  private static final char FIELD_SEPARATOR = '=';
+  private static final char PAIR_SEPARATOR = ';';
+  private static final char DOUBLE_QUOTE = '"';
+  private static final char ESCAPE = '\\';
+  private static final int DATE_TIME_LENGTH = 24;
+
+  private final String data;
+  private final int length;
+  private int position;
+  private int pairStart;
+  private int line;
+  private int valueStart;
+  private int valueEnd;
+  private boolean escapedValue;
+
+  KeyValueLineReader(final String data) {
+    this(data, 0);
+  }
+
+  /**
+   * Starts reading at the given offset, which must be the start of a pair.
+   */
+  KeyValueLineReader(final String data, final int offset) {
+    this.data = data == null ? "" : data;
+    this.length = this.data.length();
+    this.position = offset;
+  }
+
+  /**
+   * Moves to the next pair with a numeric line key.  Returns false once the data is exhausted.
+   */
+  boolean next() {
+    while (this.position < this.length) {
+      this.pairStart = this.position;
+      int i = this.position;
+      int lineNumber = 0;
+      boolean numeric = true;
+      char c = 0;
+
+      while (i < this.length) {
+        c = this.data.charAt(i);
+        if (c == FIELD_SEPARATOR || c == PAIR_SEPARATOR) {
+          break;
+        }
+        if (c >= '0' && c <= '9') {
+          lineNumber = lineNumber * 10 + (c - '0');
+        } else {
+          numeric = false;
+        }
+        i++;
+      }
+
+      numeric = numeric && i > this.position;
+
+      if (i < this.length && c == FIELD_SEPARATOR) {
+        i = this.scanValue(i + 1);
+      } else {
+        this.valueStart = i;
+        this.valueEnd = i;
+        this.escapedValue = false;
+      }
+
+      // step over the pair separator
+      this.position = i + 1;
+
+      if (numeric) {
+        this.line = lineNumber;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  int line() {
+    return this.line;
+  }
+
+  /**
+   * Offset of the current pair in the measure data.
+   */
+  int pairStart() {
+    return this.pairStart;
+  }
+
+  String value() {
+    if (!this.escapedValue) {
+      return this.data.substring(this.valueStart, this.valueEnd);
+    }
+    return this.unescapeValue();
+  }
+
+  /**
+   * Compares the current value with the given one without extracting it.
+   */
+  boolean valueEquals(final String other) {
+    if (other == null) {
+      return false;
+    }
+    if (this.escapedValue) {
+      return other.equals(this.unescapeValue());
+    }
+    final int valueLength = this.valueEnd - this.valueStart;
+    return other.length() == valueLength && this.data.regionMatches(this.valueStart, other, 0, valueLength);
+  }
+
+  /**
+   * Reads the current value as a KeyValueFormat date time (yyyy-MM-dd'T'HH:mm:ssZ) in epoch millis,
+   * without going through java.util.Date for the usual "+hhmm" offset layout.
+   */
+  long dateTimeValue() {
+    if (this.escapedValue || this.valueEnd - this.valueStart != DATE_TIME_LENGTH || !this.isNumericOffset()) {
+      return DateUtils.parseDateTime(this.value()).getTime();
+    }
+
+    final int s = this.valueStart;
+    final int year = this.digits(s, 4);
+    final int month = this.digits(s + 5, 2);
+    final int day = this.digits(s + 8, 2);
+    final int hour = this.digits(s + 11, 2);
+    final int minute = this.digits(s + 14, 2);
+    final int second = this.digits(s + 17, 2);
+    final int offsetHours = this.digits(s + 20, 2);
+    final int offsetMinutes = this.digits(s + 22, 2);
+
+    if ((year | month | day | hour | minute | second | offsetHours | offsetMinutes) < 0) {
+      return DateUtils.parseDateTime(this.value()).getTime();
+    }
+
+    final long localSeconds = ((daysFromCivil(year, month, day) * 24 + hour) * 60 + minute) * 60 + second;
+    final long offsetSeconds = (offsetHours * 60L + offsetMinutes) * 60L * (this.data.charAt(s + 19) == '-' ? -1 : 1);
+    return (localSeconds - offsetSeconds) * 1000L;
+  }
+
+  private int scanValue(final int start) {
+    this.escapedValue = start < this.length && this.data.charAt(start) == DOUBLE_QUOTE;
+
+    if (!this.escapedValue) {
+      final int end = this.data.indexOf(PAIR_SEPARATOR, start);
+      this.valueStart = start;
+      this.valueEnd = end < 0 ? this.length : end;
+      return this.valueEnd;
+    }
+
+    boolean quoted = true;
+    int i = start + 1;
+    while (i < this.length) {
+      final char c = this.data.charAt(i);
+      if (quoted && c == ESCAPE && i + 1 < this.length && this.data.charAt(i + 1) == DOUBLE_QUOTE) {
+        i += 2;
+        continue;
+      }
+      if (quoted && c == DOUBLE_QUOTE) {
+        quoted = false;
+      } else if (!quoted && c == PAIR_SEPARATOR) {
+        break;
+      }
+      i++;
+    }
+    this.valueStart = start;
+    this.valueEnd = i;
+    return i;
+  }
+
+  // same rules as KeyValueFormat: a leading quote opens an escaped section in which \" is a literal quote
+  private String unescapeValue() {
+    final StringBuilder sb = new StringBuilder(this.valueEnd - this.valueStart);
+    boolean quoted = true;
+    int i = this.valueStart + 1;
+    while (i < this.valueEnd) {
+      final char c = this.data.charAt(i);
+      if (quoted && c == ESCAPE && i + 1 < this.valueEnd && this.data.charAt(i + 1) == DOUBLE_QUOTE) {
+        sb.append(DOUBLE_QUOTE);
+        i += 2;
+        continue;
+      }
+      if (quoted && c == DOUBLE_QUOTE) {
+        quoted = false;
+      } else {
+        sb.append(c);
+      }
+      i++;
+    }
+    return sb.toString();
+  }
+
+  private boolean isNumericOffset() {
+    final char sign = this.data.charAt(this.valueStart + 19);
+    return (sign == '+' || sign == '-') && this.data.charAt(this.valueStart + 10) == 'T';
+  }
+
+  private int digits(final int from, final int count) {
+    int result = 0;
+    for (int i = from; i < from + count; i++) {
+      final char c = this.data.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      result = result * 10 + (c - '0');
+    }
+    return result;
+  }
+
+  // proleptic Gregorian calendar, days since 1970-01-01
+  private static long daysFromCivil(final int year, final int month, final int day) {
+    final int y = month <= 2 ? year - 1 : year;
+    final int era = (y >= 0 ? y : y - 399) / 400;
+    final int yearOfEra = y - era * 400;
+    final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097L + dayOfEra - 719468;
+  }
+}
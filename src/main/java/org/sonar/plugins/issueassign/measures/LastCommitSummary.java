@@ -0,0 +1,145 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * File-level view of the newest commit in a file: when it happened, which lines it touched and who made it,
+ * along with the author of most of the file's lines.
+ */
+public final class LastCommitSummary {
+
+  private static final long ESTIMATED_OBJECT_BYTES = 48;
+
+  private final long lastCommitTime;
+  private final int[] lines;
+  private final int authorId;
+  private final boolean uniqueAuthor;
+  private final String author;
+  private final String topContributor;
+
+  private LastCommitSummary(final long lastCommitTime, final int[] lines, final int authorId,
+    final boolean uniqueAuthor, final String author, final String topContributor) {
+    this.lastCommitTime = lastCommitTime;
+    this.lines = lines;
+    this.authorId = authorId;
+    this.uniqueAuthor = uniqueAuthor;
+    this.author = author;
+    this.topContributor = topContributor;
+  }
+
+  public static LastCommitSummary of(final ScmMeasures scmMeasures) {
+    final int lineCount = scmMeasures.getLineCount();
+    long lastCommitTime = ScmMeasures.NO_COMMIT_TIME;
+    int lastCommitLineCount = 0;
+    final Map<Integer, int[]> linesByAuthor = new HashMap<Integer, int[]>();
+    int topContributorLine = 0;
+    int topContributorLineCount = 0;
+
+    for (int line = 1; line <= lineCount; line++) {
+      final int lineAuthorId = scmMeasures.getAuthorId(line);
+      if (lineAuthorId != ScmSymbolTable.NO_SYMBOL) {
+        int[] authorLineCount = linesByAuthor.get(lineAuthorId);
+        if (authorLineCount == null) {
+          authorLineCount = new int[1];
+          linesByAuthor.put(lineAuthorId, authorLineCount);
+        }
+        // ties go to the author who reached the count first
+        if (++authorLineCount[0] > topContributorLineCount) {
+          topContributorLineCount = authorLineCount[0];
+          topContributorLine = line;
+        }
+      }
+
+      final long commitTime = scmMeasures.getLastCommitTime(line);
+      if (commitTime > lastCommitTime) {
+        lastCommitTime = commitTime;
+        lastCommitLineCount = 1;
+      } else if (commitTime == lastCommitTime && commitTime != ScmMeasures.NO_COMMIT_TIME) {
+        lastCommitLineCount++;
+      }
+    }
+
+    final int[] lines = new int[lastCommitLineCount];
+    int authorId = ScmSymbolTable.NO_SYMBOL;
+    boolean uniqueAuthor = true;
+    int index = 0;
+
+    for (int line = 1; line <= lineCount && index < lastCommitLineCount; line++) {
+      if (scmMeasures.getLastCommitTime(line) != lastCommitTime) {
+        continue;
+      }
+      final int lineAuthorId = scmMeasures.getAuthorId(line);
+      if (index == 0) {
+        authorId = lineAuthorId;
+      } else if (lineAuthorId != authorId) {
+        uniqueAuthor = false;
+      }
+      lines[index++] = line;
+    }
+
+    final String author = uniqueAuthor && index > 0 ? scmMeasures.getAuthor(lines[0]) : null;
+    final String topContributor = topContributorLine > 0 ? scmMeasures.getAuthor(topContributorLine) : null;
+    return new LastCommitSummary(lastCommitTime, lines, authorId, uniqueAuthor, author, topContributor);
+  }
+
+  /**
+   * Newest commit time in the file, or ScmMeasures.NO_COMMIT_TIME if the file has no commit data.
+   */
+  public long getLastCommitTime() {
+    return this.lastCommitTime;
+  }
+
+  public boolean hasCommits() {
+    return this.lastCommitTime != ScmMeasures.NO_COMMIT_TIME;
+  }
+
+  public int[] getLines() {
+    return this.lines.clone();
+  }
+
+  public boolean hasUniqueAuthor() {
+    return this.uniqueAuthor;
+  }
+
+  public int getAuthorId() {
+    return this.authorId;
+  }
+
+  public long getEstimatedBytes() {
+    return ESTIMATED_OBJECT_BYTES + MemorySizes.ofIntArray(this.lines.length);
+  }
+
+  /**
+   * Author of the last commit, or null if the file has no commit data or the last commit has several authors.
+   */
+  public String getAuthor() {
+    return this.author;
+  }
+
+  /**
+   * Author of the largest number of lines in the file, or null if the file has no author data.
+   */
+  public String getTopContributor() {
+    return this.topContributor;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+import java.util.Arrays;
+
+/**
+ * Single line lookups over a raw measure through a sparse offset index, used until enough lines have been
+ * requested that decoding the whole measure is the cheaper option.
+ */
+final class LazyLineLookup {
+
+  static final int SAMPLE_INTERVAL = 32;
+  static final int FULL_DECODE_THRESHOLD = 8;
+
+  private static final int[] NO_SAMPLES = new int[0];
+
+  private final String data;
+  private int[] sampledLines;
+  private int[] sampledOffsets;
+  private int sampleCount;
+  private boolean ordered = true;
+  private int lookups;
+
+  LazyLineLookup(final String data) {
+    this.data = data;
+  }
+
+  /**
+   * Counts a lookup and tells whether it should be served lazily.  Once this returns false the caller is
+   * expected to decode the whole measure and drop this lookup.
+   */
+  boolean acceptLookup() {
+    if (++this.lookups > FULL_DECODE_THRESHOLD) {
+      return false;
+    }
+    if (this.sampledLines == null) {
+      this.buildIndex();
+    }
+    return this.ordered;
+  }
+
+  /**
+   * Returns a reader positioned on the given line, or null if the measure has no entry for it.
+   */
+  KeyValueLineReader find(final int line) {
+    int sample = Arrays.binarySearch(this.sampledLines, 0, this.sampleCount, line);
+    if (sample < 0) {
+      // insertion point - 1 is the last sample before the line
+      sample = -sample - 2;
+    }
+    if (sample < 0) {
+      return null;
+    }
+
+    final KeyValueLineReader reader = new KeyValueLineReader(this.data, this.sampledOffsets[sample]);
+    while (reader.next()) {
+      if (reader.line() == line) {
+        return reader;
+      }
+      if (reader.line() > line) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  long estimatedBytes() {
+    if (this.sampledLines == null) {
+      return 0;
+    }
+    return MemorySizes.ofIntArray(this.sampledLines.length) + MemorySizes.ofIntArray(this.sampledOffsets.length);
+  }
+
+  private void buildIndex() {
+    final int estimate = ScmMeasures.estimateLineCount(this.data) / SAMPLE_INTERVAL + 1;
+    int[] lines = new int[estimate];
+    int[] offsets = new int[estimate];
+    int count = 0;
+    int pairs = 0;
+    int previousLine = 0;
+
+    final KeyValueLineReader reader = new KeyValueLineReader(this.data);
+    while (reader.next()) {
+      final int line = reader.line();
+      if (line <= previousLine) {
+        // binary search over the samples relies on ascending lines
+        this.ordered = false;
+        break;
+      }
+      if (pairs++ % SAMPLE_INTERVAL == 0) {
+        if (count == lines.length) {
+          lines = Arrays.copyOf(lines, count * 2);
+          offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        lines[count] = line;
+        offsets[count] = reader.pairStart();
+        count++;
+      }
+      previousLine = line;
+    }
+
+    this.sampledLines = this.ordered ? lines : NO_SAMPLES;
+    this.sampledOffsets = this.ordered ? offsets : NO_SAMPLES;
+    this.sampleCount = this.ordered ? count : 0;
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+/**
+ * Decoded, line-indexed SCM data of one file.  Authors and revisions are ids in the ScmSymbolTable.
+ */
+interface LineBlame {
+
+  /**
+   * Highest line number carrying SCM data.
+   */
+  int lineCount();
+
+  int authorId(int line);
+
+  int revisionId(int line);
+
+  long commitTime(int line);
+
+  /**
+   * Approximate number of heap bytes held by this blame, symbol table excluded.
+   */
+  long estimatedBytes();
+}
@@ -0,0 +1,135 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decoded blame of one file living in a ScmSpillStore segment: the author ids, then the revision ids, then the
+ * commit times of its entries.  Entries are single lines, or runs of lines when spilled from a RangedLineBlame, in
+ * which case the first lines of the runs come before the author ids.  Only the location of the data stays on the heap.
+ */
+final class MappedLineBlame implements RangedLineBlame {
+
+  static final int BYTES_PER_ENTRY = 4 + 4 + 8;
+  static final int BYTES_PER_RANGE_START = 4;
+
+  private static final long ESTIMATED_OBJECT_BYTES = 40;
+
+  private final ByteBuffer segment;
+  private final int offset;
+  private final int lineCount;
+  private final int entryCount;
+  private final boolean ranged;
+
+  MappedLineBlame(final ByteBuffer segment, final int offset, final int lineCount, final int entryCount,
+    final boolean ranged) {
+    this.segment = segment;
+    this.offset = offset;
+    this.lineCount = lineCount;
+    this.entryCount = entryCount;
+    this.ranged = ranged;
+  }
+
+  /**
+   * Number of bytes taken by the given number of entries in a segment.
+   */
+  static long byteLength(final int entryCount, final boolean ranged) {
+    return (long) entryCount * (ranged ? BYTES_PER_ENTRY + BYTES_PER_RANGE_START : BYTES_PER_ENTRY);
+  }
+
+  @Override
+  public int lineCount() {
+    return this.lineCount;
+  }
+
+  @Override
+  public int rangeCount() {
+    return this.entryCount;
+  }
+
+  @Override
+  public int rangeStart(final int range) {
+    return this.ranged ? this.segment.getInt(this.offset + 4 * range) : range + 1;
+  }
+
+  @Override
+  public int rangeOf(final int line) {
+    if (line < 1 || line > this.lineCount) {
+      return -1;
+    }
+    if (!this.ranged) {
+      return line - 1;
+    }
+    // the last range starting at or before the line
+    int lower = 0;
+    int upper = this.entryCount - 1;
+    while (lower < upper) {
+      final int middle = (lower + upper + 1) >>> 1;
+      if (this.rangeStart(middle) <= line) {
+        lower = middle;
+      } else {
+        upper = middle - 1;
+      }
+    }
+    return lower;
+  }
+
+  @Override
+  public int authorId(final int line) {
+    final int entry = this.rangeOf(line);
+    return entry < 0 ? ScmSymbolTable.NO_SYMBOL : this.segment.getInt(this.authorsOffset() + 4 * entry);
+  }
+
+  @Override
+  public int revisionId(final int line) {
+    final int entry = this.rangeOf(line);
+    return entry < 0
+      ? ScmSymbolTable.NO_SYMBOL : this.segment.getInt(this.authorsOffset() + 4 * this.entryCount + 4 * entry);
+  }
+
+  @Override
+  public long commitTime(final int line) {
+    final int entry = this.rangeOf(line);
+    return entry < 0
+      ? ScmMeasures.NO_COMMIT_TIME : this.segment.getLong(this.authorsOffset() + 8 * this.entryCount + 8 * entry);
+  }
+
+  ByteBuffer segment() {
+    return this.segment;
+  }
+
+  int offset() {
+    return this.offset;
+  }
+
+  int byteLength() {
+    return (int) byteLength(this.entryCount, this.ranged);
+  }
+
+  @Override
+  public long estimatedBytes() {
+    return ESTIMATED_OBJECT_BYTES;
+  }
+
+  private int authorsOffset() {
+    return this.ranged ? this.offset + BYTES_PER_RANGE_START * this.entryCount : this.offset;
+  }
+}
@@ -22,29 +22,66 @@ package org.sonar.plugins.issueassign.measures;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.MeasureUtils;
 import org.sonar.api.measures.Metric;
 import org.sonar.api.resources.Resource;
+import org.sonar.plugins.issueassign.IssueAssignPlugin;
 import org.sonar.plugins.issueassign.exception.MissingScmMeasureDataException;
 
-public class MeasuresFinder {
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Default ScmDataSource, reading the SCM measures saved by the analysis.  Only the measures the configured assignment
+ * mode reads are loaded: authors always, commit dates when the last commit or a cutoff date matters, revisions never.
+ * Blameless issues go to the last committer by default, so the default mode loads the commit dates too.
+ */
+public class MeasuresFinder implements ScmDataSource {
 
   private static final Logger LOG = LoggerFactory.getLogger(MeasuresFinder.class);
+  private static final Set<Capability> CAPABILITIES = Collections.unmodifiableSet(EnumSet.allOf(Capability.class));
   private SonarIndex sonarIndex;
+  private final ScmSymbolTable symbolTable;
+  private final Settings settings;
 
-  public MeasuresFinder(final SonarIndex sonarIndex) {
+  public MeasuresFinder(final SonarIndex sonarIndex, final ScmSymbolTable symbolTable) {
+    this(sonarIndex, symbolTable, null);
+  }
+
+  public MeasuresFinder(final SonarIndex sonarIndex, final ScmSymbolTable symbolTable, final Settings settings) {
     this.sonarIndex = sonarIndex;
+    this.symbolTable = symbolTable;
+    this.settings = settings;
   }
 
+  @Override
+  public Set<Capability> capabilities() {
+    return CAPABILITIES;
+  }
+
+  @Override
   public ScmMeasures getMeasures(final Resource resource) throws MissingScmMeasureDataException {
     final String authorsByLineMeasureData = this.getMeasureData(resource, CoreMetrics.SCM_AUTHORS_BY_LINE);
-    final String lastCommitByLineMeasureData = this.getMeasureData(resource, CoreMetrics.SCM_LAST_COMMIT_DATETIMES_BY_LINE);
-    final String revisionsByLineMeasureData = this.getMeasureData(resource, CoreMetrics.SCM_REVISIONS_BY_LINE);
+    final String lastCommitByLineMeasureData = this.needsCommitTimes()
+      ? this.getMeasureData(resource, CoreMetrics.SCM_LAST_COMMIT_DATETIMES_BY_LINE) : null;
 
     return new ScmMeasures(resource.getEffectiveKey(), authorsByLineMeasureData,
-      lastCommitByLineMeasureData, revisionsByLineMeasureData);
+      lastCommitByLineMeasureData, null, this.symbolTable);
+  }
+
+  // whether an issue may need a commit time; issues without a line are only known once they are assigned
+  private boolean needsCommitTimes() {
+    if (this.settings == null) {
+      return true;
+    }
+    return this.settings.getBoolean(IssueAssignPlugin.PROPERTY_ASSIGN_TO_LAST_COMMITTER)
+      || this.settings.getBoolean(IssueAssignPlugin.PROPERTY_ASSIGN_BLAMELESS_TO_LAST_COMMITTER)
+      || this.settings.getInt(IssueAssignPlugin.PROPERTY_BLAME_LINE_WINDOW) > 0
+      || this.settings.getString(IssueAssignPlugin.PROPERTY_ISSUE_CUTOFF_DATE) != null;
   }
 
   private String getMeasureData(final Resource resource, final Metric metric) throws MissingScmMeasureDataException {
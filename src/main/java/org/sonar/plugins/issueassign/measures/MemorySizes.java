@@ -0,0 +1,48 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+/**
+ * Rough heap footprint of the structures holding SCM data, assuming a 64 bit JVM with compressed oops.
+ */
+final class MemorySizes {
+
+  private static final long ARRAY_HEADER = 16;
+  private static final long STRING_HEADER = 24;
+
+  private MemorySizes() {
+  }
+
+  static long ofIntArray(final int length) {
+    return ARRAY_HEADER + 4L * length;
+  }
+
+  static long ofLongArray(final int length) {
+    return ARRAY_HEADER + 8L * length;
+  }
+
+  static long ofByteArray(final int length) {
+    return ARRAY_HEADER + length;
+  }
+
+  static long ofString(final String value) {
+    return value == null ? 0 : STRING_HEADER + ARRAY_HEADER + 2L * value.length();
+  }
+}
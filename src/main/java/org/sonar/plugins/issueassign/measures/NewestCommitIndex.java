@@ -0,0 +1,104 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+/**
+ * Segment tree over the commit times of a file, answering "which line of [from, to] was changed last" in O(log n).
+ * Run-length encoded blame gets one leaf per range rather than per line.
+ */
+final class NewestCommitIndex {
+
+  private final LineBlame blame;
+  private final RangedLineBlame ranges;
+  private final int size;
+  // tree[size + i] is range (or line) i + 1, every inner node holds the newest range of its two children
+  private final int[] tree;
+
+  NewestCommitIndex(final LineBlame blame) {
+    this.blame = blame;
+    this.ranges = blame instanceof RangedLineBlame ? (RangedLineBlame) blame : null;
+    this.size = this.ranges == null ? blame.lineCount() : this.ranges.rangeCount();
+    this.tree = new int[2 * this.size];
+    for (int i = 0; i < this.size; i++) {
+      this.tree[this.size + i] = i + 1;
+    }
+    for (int node = this.size - 1; node > 0; node--) {
+      this.tree[node] = this.newest(this.tree[2 * node], this.tree[2 * node + 1]);
+    }
+  }
+
+  /**
+   * Returns the line of [fromLine, toLine] with the newest commit, the lowest one on ties, or 0 if none of them
+   * has SCM data.
+   */
+  int newestLine(final int fromLine, final int toLine) {
+    final int firstLine = Math.max(fromLine, 1);
+    final int lastLine = Math.min(toLine, this.blame.lineCount());
+    if (firstLine > lastLine) {
+      return 0;
+    }
+    int lower = this.leafOf(firstLine) - 1 + this.size;
+    int upper = this.leafOf(lastLine) + this.size;
+    int newest = 0;
+    while (lower < upper) {
+      if ((lower & 1) == 1) {
+        newest = this.newest(newest, this.tree[lower++]);
+      }
+      if ((upper & 1) == 1) {
+        newest = this.newest(newest, this.tree[--upper]);
+      }
+      lower >>= 1;
+      upper >>= 1;
+    }
+    if (newest == 0 || this.commitTime(newest) == ScmMeasures.NO_COMMIT_TIME) {
+      return 0;
+    }
+    // a range may start before the window, its first line inside the window is the lowest one
+    return Math.max(this.firstLine(newest), firstLine);
+  }
+
+  long estimatedBytes() {
+    return MemorySizes.ofIntArray(this.tree.length);
+  }
+
+  private int leafOf(final int line) {
+    return this.ranges == null ? line : this.ranges.rangeOf(line) + 1;
+  }
+
+  private int firstLine(final int leaf) {
+    return this.ranges == null ? leaf : this.ranges.rangeStart(leaf - 1);
+  }
+
+  private long commitTime(final int leaf) {
+    return this.blame.commitTime(this.firstLine(leaf));
+  }
+
+  private int newest(final int leaf, final int otherLeaf) {
+    if (leaf == 0) {
+      return otherLeaf;
+    }
+    final long time = this.commitTime(leaf);
+    final long otherTime = this.commitTime(otherLeaf);
+    if (time != otherTime) {
+      return time > otherTime ? leaf : otherLeaf;
+    }
+    return Math.min(leaf, otherLeaf);
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+import java.util.Arrays;
+
+/**
+ * Run-length encoded blame: consecutive lines sharing author, revision and commit time are stored as a single
+ * [startLine, nextStartLine) range.  Commit times are seconds relative to the oldest commit of the file.
+ */
+final class RangeLineBlame implements RangedLineBlame {
+
+  // use ranges once they at least halve the number of entries
+  private static final int MIN_LINES_PER_RANGE = 2;
+  private static final int NO_TIME_DELTA = -1;
+  private static final long MILLIS_PER_SECOND = 1000L;
+
+  private final int[] rangeStarts;
+  private final int[] authorIds;
+  private final int[] revisionIds;
+  private final int[] timeDeltas;
+  private final long baseTime;
+  private final int lineCount;
+
+  private RangeLineBlame(final int[] rangeStarts, final int[] authorIds, final int[] revisionIds,
+    final int[] timeDeltas, final long baseTime, final int lineCount) {
+    this.rangeStarts = rangeStarts;
+    this.authorIds = authorIds;
+    this.revisionIds = revisionIds;
+    this.timeDeltas = timeDeltas;
+    this.baseTime = baseTime;
+    this.lineCount = lineCount;
+  }
+
+  /**
+   * Returns the range encoding of the given blame when it is worth it, the blame itself otherwise.
+   */
+  static LineBlame compact(final LineBlame blame) {
+    final int lineCount = blame.lineCount();
+    long baseTime = Long.MAX_VALUE;
+    long maxTime = Long.MIN_VALUE;
+    int ranges = 0;
+
+    for (int line = 1; line <= lineCount; line++) {
+      final long commitTime = blame.commitTime(line);
+      if (commitTime != ScmMeasures.NO_COMMIT_TIME) {
+        if (commitTime % MILLIS_PER_SECOND != 0) {
+          // sub-second times do not fit the encoding
+          return blame;
+        }
+        baseTime = Math.min(baseTime, commitTime);
+        maxTime = Math.max(maxTime, commitTime);
+      }
+      if (line == 1 || !sameAsPrevious(blame, line)) {
+        ranges++;
+      }
+    }
+
+    if (ranges == 0 || ranges * MIN_LINES_PER_RANGE > lineCount
+      || (maxTime != Long.MIN_VALUE && (maxTime - baseTime) / MILLIS_PER_SECOND >= Integer.MAX_VALUE)) {
+      return blame;
+    }
+
+    final int[] rangeStarts = new int[ranges];
+    final int[] authorIds = new int[ranges];
+    final int[] revisionIds = new int[ranges];
+    final int[] timeDeltas = new int[ranges];
+    int range = -1;
+
+    for (int line = 1; line <= lineCount; line++) {
+      if (line > 1 && sameAsPrevious(blame, line)) {
+        continue;
+      }
+      range++;
+      final long commitTime = blame.commitTime(line);
+      rangeStarts[range] = line;
+      authorIds[range] = blame.authorId(line);
+      revisionIds[range] = blame.revisionId(line);
+      timeDeltas[range] = commitTime == ScmMeasures.NO_COMMIT_TIME
+        ? NO_TIME_DELTA : (int) ((commitTime - baseTime) / MILLIS_PER_SECOND);
+    }
+
+    return new RangeLineBlame(rangeStarts, authorIds, revisionIds, timeDeltas, baseTime, lineCount);
+  }
+
+  @Override
+  public int rangeCount() {
+    return this.rangeStarts.length;
+  }
+
+  @Override
+  public int rangeStart(final int range) {
+    return this.rangeStarts[range];
+  }
+
+  @Override
+  public int lineCount() {
+    return this.lineCount;
+  }
+
+  @Override
+  public int authorId(final int line) {
+    final int range = this.rangeOf(line);
+    return range < 0 ? ScmSymbolTable.NO_SYMBOL : this.authorIds[range];
+  }
+
+  @Override
+  public int revisionId(final int line) {
+    final int range = this.rangeOf(line);
+    return range < 0 ? ScmSymbolTable.NO_SYMBOL : this.revisionIds[range];
+  }
+
+  @Override
+  public long commitTime(final int line) {
+    final int range = this.rangeOf(line);
+    if (range < 0 || this.timeDeltas[range] == NO_TIME_DELTA) {
+      return ScmMeasures.NO_COMMIT_TIME;
+    }
+    return this.baseTime + this.timeDeltas[range] * MILLIS_PER_SECOND;
+  }
+
+  @Override
+  public long estimatedBytes() {
+    return 4 * MemorySizes.ofIntArray(this.rangeStarts.length);
+  }
+
+  @Override
+  public int rangeOf(final int line) {
+    if (line < 1 || line > this.lineCount) {
+      return -1;
+    }
+    final int range = Arrays.binarySearch(this.rangeStarts, line);
+    // not a range start: the insertion point is the range after the one holding the line
+    return range >= 0 ? range : -range - 2;
+  }
+
+  private static boolean sameAsPrevious(final LineBlame blame, final int line) {
+    return blame.commitTime(line) == blame.commitTime(line - 1)
+      && blame.authorId(line) == blame.authorId(line - 1)
+      && blame.revisionId(line) == blame.revisionId(line - 1);
+  }
+}
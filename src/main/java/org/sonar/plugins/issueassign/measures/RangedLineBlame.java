@@ -0,0 +1,39 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+/**
+ * Blame stored as runs of consecutive lines sharing author, revision and commit time, letting line range queries
+ * work on runs instead of single lines.
+ */
+interface RangedLineBlame extends LineBlame {
+
+  int rangeCount();
+
+  /**
+   * First line of the given range, ranges being numbered from 0.
+   */
+  int rangeStart(int range);
+
+  /**
+   * Returns the range holding the given line, or -1 if the line has no SCM data.
+   */
+  int rangeOf(int line);
+}
@@ -0,0 +1,62 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+import org.sonar.api.BatchExtension;
+import org.sonar.api.resources.Resource;
+import org.sonar.plugins.issueassign.exception.MissingScmMeasureDataException;
+
+import java.util.Set;
+
+/**
+ * Provider of per-file blame data.  MeasuresFinder, reading the SCM measures of the analysis, is the default; a plugin
+ * may register another implementation to serve blame from a faster source.
+ */
+public interface ScmDataSource extends BatchExtension {
+
+  enum Capability {
+    /**
+     * Author and commit time of single lines.
+     */
+    LINE,
+    /**
+     * Last commit of a whole file.
+     */
+    FILE,
+    /**
+     * Newest line within a range of lines.
+     */
+    RANGE
+  }
+
+  /**
+   * Queries this source can answer.  Blame does not load data for the others.  Consulted for every issue, so
+   * implementations should return the same set each time rather than build a new one.
+   */
+  Set<Capability> capabilities();
+
+  /**
+   * Returns the line-indexed blame of the given file, see ScmMeasures.fromLines to build it from arrays.  Only
+   * authors and commit times are used; revisions are optional and may be left out.
+   *
+   * @throws MissingScmMeasureDataException if the source has no data for the file
+   */
+  ScmMeasures getMeasures(Resource resource) throws MissingScmMeasureDataException;
+}
@@ -23,68 +23,321 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Metric;
-import org.sonar.api.utils.KeyValueFormat;
 
-import java.util.Date;
-import java.util.Map;
+import java.util.Arrays;
 
+/**
+ * SCM data of one file.  Thread-safe, so that the file can be decoded ahead on a worker thread.
+ */
 public class ScmMeasures {
 
+  public static final long NO_COMMIT_TIME = Long.MIN_VALUE;
+
   private static final Logger LOG = LoggerFactory.getLogger(ScmMeasures.class);
-  private String resourceKey;
+  private static final int[] NO_SYMBOLS = new int[0];
+  private final String resourceKey;
+  private final ScmSymbolTable symbolTable;
 
-  private final String authorsByLineMeasure;
-  private final String lastCommitsByLineMeasure;
-  private final String revisionsByLineMeasure;
+  // raw measures, released once decoded
+  private String authorsByLineMeasure;
+  private String lastCommitsByLineMeasure;
+  private String revisionsByLineMeasure;
 
-  private Map<Integer, String> authorsByLine;
-  private Map<Integer, Date> lastCommitsByLine;
-  private Map<Integer, String> revisionsByLine;
+  // null until one of the measures is needed in full, then all of them are decoded together
+  private LineBlame lineBlame;
+  // built on the first range query only
+  private NewestCommitIndex newestCommitIndex;
+
+  // single line lookups over the raw measures until a full decode is worth it
+  private LazyLineLookup authorsLookup;
+  private LazyLineLookup lastCommitsLookup;
+  private LazyLineLookup revisionsLookup;
 
   public ScmMeasures(final String resourceKey, final String authorsByLineMeasure,
-    final String lastCommitsByLineMeasure, final String revisionsByLineMeasure) {
+    final String lastCommitsByLineMeasure, final String revisionsByLineMeasure, final ScmSymbolTable symbolTable) {
     this.resourceKey = resourceKey;
+    this.symbolTable = symbolTable;
     this.authorsByLineMeasure = authorsByLineMeasure;
     this.lastCommitsByLineMeasure = lastCommitsByLineMeasure;
     this.revisionsByLineMeasure = revisionsByLineMeasure;
+    this.authorsLookup = new LazyLineLookup(authorsByLineMeasure);
+    this.lastCommitsLookup = new LazyLineLookup(lastCommitsByLineMeasure);
+    this.revisionsLookup = new LazyLineLookup(revisionsByLineMeasure);
+  }
+
+  private ScmMeasures(final String resourceKey, final ScmSymbolTable symbolTable, final LineBlame lineBlame) {
+    this.resourceKey = resourceKey;
+    this.symbolTable = symbolTable;
+    this.lineBlame = lineBlame;
+  }
+
+  /**
+   * Builds the SCM data of a file from line-indexed values, line N at index N - 1.  Lines without SCM data have a
+   * null author and revision and a NO_COMMIT_TIME commit time.  Revisions are optional and may be null, as issue
+   * assignment does not use them.
+   */
+  public static ScmMeasures fromLines(final String resourceKey, final String[] authors, final long[] commitTimes,
+    final String[] revisions, final ScmSymbolTable symbolTable) {
+    final ColumnarLineBlame columns = new ColumnarLineBlame(internAll(authors, symbolTable), commitTimes.clone(),
+      internAll(revisions, symbolTable));
+    return new ScmMeasures(resourceKey, symbolTable, RangeLineBlame.compact(columns));
+  }
+
+  /**
+   * Returns the author of the given line, or null if the line has no SCM data.
+   */
+  public synchronized String getAuthor(final int line) {
+    return this.symbolTable.symbol(this.getAuthorId(line));
+  }
+
+  /**
+   * Returns the symbol table id of the author of the given line, or ScmSymbolTable.NO_SYMBOL.
+   */
+  public synchronized int getAuthorId(final int line) {
+    if (this.lineBlame == null && this.authorsLookup.acceptLookup()) {
+      return this.lookupSymbol(this.authorsLookup, line);
+    }
+    return this.decoded().authorId(line);
+  }
+
+  /**
+   * Returns the last commit time of the given line in epoch millis, or NO_COMMIT_TIME if the line has no SCM data.
+   */
+  public synchronized long getLastCommitTime(final int line) {
+    if (this.lineBlame == null && this.lastCommitsLookup.acceptLookup()) {
+      final KeyValueLineReader reader = this.lastCommitsLookup.find(line);
+      return reader == null ? NO_COMMIT_TIME : reader.dateTimeValue();
+    }
+    return this.decoded().commitTime(line);
   }
 
-  public Map<Integer, String> getAuthorsByLine() {
-    if (this.authorsByLine == null) {
-      this.authorsByLine = this.parseIntString(CoreMetrics.SCM_AUTHORS_BY_LINE, this.authorsByLineMeasure);
+  /**
+   * Returns the revision of the given line, or null if the line has no SCM data or its source provides no revisions.
+   */
+  public synchronized String getRevision(final int line) {
+    if (this.lineBlame == null && this.revisionsLookup.acceptLookup()) {
+      return this.symbolTable.symbol(this.lookupSymbol(this.revisionsLookup, line));
     }
-    return this.authorsByLine;
+    return this.symbolTable.symbol(this.decoded().revisionId(line));
   }
 
-  public Map<Integer, Date> getLastCommitsByLine() {
-    if (this.lastCommitsByLine == null) {
-      this.lastCommitsByLine = this.parseIntDateTime(CoreMetrics.SCM_LAST_COMMIT_DATETIMES_BY_LINE, this.lastCommitsByLineMeasure);
+  /**
+   * Returns the line of [fromLine, toLine] that was committed last, or 0 if none of them has SCM data.
+   */
+  public synchronized int getNewestLine(final int fromLine, final int toLine) {
+    if (this.newestCommitIndex == null) {
+      this.newestCommitIndex = new NewestCommitIndex(this.decoded());
     }
-    return this.lastCommitsByLine;
+    return this.newestCommitIndex.newestLine(fromLine, toLine);
+  }
+
+  /**
+   * Highest line number carrying SCM data.
+   */
+  public synchronized int getLineCount() {
+    return this.decoded().lineCount();
   }
 
-  public Map<Integer, String> getRevisionsByLine() {
-    if (this.revisionsByLine == null) {
-      this.revisionsByLine = this.parseIntString(CoreMetrics.SCM_REVISIONS_BY_LINE, this.revisionsByLineMeasure);
+  /**
+   * Decodes the whole file now rather than on first need.  The decoding runs without holding the lock of the
+   * measures, so that lookups on the file are served from the raw measures meanwhile.
+   */
+  public void decode() {
+    final String authors;
+    final String lastCommits;
+    final String revisions;
+    synchronized (this) {
+      if (this.lineBlame != null) {
+        return;
+      }
+      authors = this.authorsByLineMeasure;
+      lastCommits = this.lastCommitsByLineMeasure;
+      revisions = this.revisionsByLineMeasure;
+    }
+
+    final LineBlame decoded = this.decode(authors, lastCommits, revisions);
+    synchronized (this) {
+      // unless a lookup needed the whole file meanwhile and decoded it itself
+      if (this.lineBlame == null) {
+        this.install(decoded);
+      }
     }
-    return revisionsByLine;
+  }
+
+  /**
+   * Moves the decoded data of this file to the given store, leaving only its location on the heap.  Returns false if
+   * the data could not be written, in which case it stays on the heap.
+   */
+  public synchronized boolean spillTo(final ScmSpillStore store) {
+    if (this.isSpilled()) {
+      return true;
+    }
+    final LineBlame spilled = store.write(this.decoded());
+    if (spilled == null) {
+      return false;
+    }
+    this.lineBlame = spilled;
+    this.newestCommitIndex = null;
+    return true;
+  }
+
+  /**
+   * Gives the spilled data of this file back to the given store once the file leaves the blame cache.  The file has
+   * no SCM data from then on.
+   */
+  public synchronized void releaseSpilled(final ScmSpillStore store) {
+    if (!this.isSpilled()) {
+      return;
+    }
+    store.release((MappedLineBlame) this.lineBlame);
+    this.lineBlame = new ColumnarLineBlame(NO_SYMBOLS, new long[0], NO_SYMBOLS);
+    this.newestCommitIndex = null;
+  }
+
+  public synchronized boolean isSpilled() {
+    return this.lineBlame instanceof MappedLineBlame;
   }
 
   public String getKey() {
     return resourceKey;
   }
 
-  private Map<Integer, String> parseIntString(final Metric metric, final String measure) {
+  /**
+   * Approximate number of heap bytes currently held for this file, shared symbol table excluded.
+   */
+  public synchronized long getRetainedBytes() {
+    if (this.lineBlame != null) {
+      return this.lineBlame.estimatedBytes()
+        + (this.newestCommitIndex == null ? 0 : this.newestCommitIndex.estimatedBytes());
+    }
+    return MemorySizes.ofString(this.authorsByLineMeasure) + this.authorsLookup.estimatedBytes()
+      + MemorySizes.ofString(this.lastCommitsByLineMeasure) + this.lastCommitsLookup.estimatedBytes()
+      + MemorySizes.ofString(this.revisionsByLineMeasure) + this.revisionsLookup.estimatedBytes();
+  }
+
+  private LineBlame decoded() {
+    if (this.lineBlame == null) {
+      this.install(this.decode(this.authorsByLineMeasure, this.lastCommitsByLineMeasure, this.revisionsByLineMeasure));
+    }
+    return this.lineBlame;
+  }
+
+  // only reads its arguments and the thread-safe symbol table, so it may run outside the lock
+  private LineBlame decode(final String authors, final String lastCommits, final String revisions) {
+    final ColumnarLineBlame columns = new ColumnarLineBlame(
+      this.decodeSymbols(CoreMetrics.SCM_AUTHORS_BY_LINE, authors),
+      this.decodeDateTimes(CoreMetrics.SCM_LAST_COMMIT_DATETIMES_BY_LINE, lastCommits),
+      this.decodeSymbols(CoreMetrics.SCM_REVISIONS_BY_LINE, revisions));
+    return RangeLineBlame.compact(columns);
+  }
+
+  private void install(final LineBlame decoded) {
+    this.lineBlame = decoded;
+    this.releaseRawMeasures();
+    LOG.debug("Decoded SCM data for {}: {} lines, {} bytes retained", this.resourceKey, decoded.lineCount(),
+      decoded.estimatedBytes());
+  }
+
+  private void releaseRawMeasures() {
+    this.authorsByLineMeasure = null;
+    this.lastCommitsByLineMeasure = null;
+    this.revisionsByLineMeasure = null;
+    this.authorsLookup = null;
+    this.lastCommitsLookup = null;
+    this.revisionsLookup = null;
+  }
+
+  private int lookupSymbol(final LazyLineLookup lookup, final int line) {
+    final KeyValueLineReader reader = lookup.find(line);
+    return reader == null ? ScmSymbolTable.NO_SYMBOL : this.symbolTable.intern(reader.value());
+  }
+
+  private int[] decodeSymbols(final Metric metric, final String measure) {
     this.logMeasureData(metric, measure);
-    return KeyValueFormat.parseIntString(measure);
+    int[] values = new int[estimateLineCount(measure)];
+    int lineCount = 0;
+    String previousSymbol = null;
+    int previousId = ScmSymbolTable.NO_SYMBOL;
+
+    final KeyValueLineReader reader = new KeyValueLineReader(measure);
+    while (reader.next()) {
+      final int line = reader.line();
+      if (line < 1) {
+        continue;
+      }
+      if (line > values.length) {
+        values = Arrays.copyOf(values, Math.max(line, values.length * 2));
+      }
+      // neighbouring lines usually share a symbol, so only go to the table when it changes
+      if (!reader.valueEquals(previousSymbol)) {
+        previousSymbol = reader.value();
+        previousId = this.symbolTable.intern(previousSymbol);
+      }
+      values[line - 1] = previousId;
+      lineCount = Math.max(lineCount, line);
+    }
+
+    if (lineCount == 0) {
+      return NO_SYMBOLS;
+    }
+    return lineCount == values.length ? values : Arrays.copyOf(values, lineCount);
   }
 
-  private Map<Integer, Date> parseIntDateTime(final Metric metric, final String measure) {
+  private long[] decodeDateTimes(final Metric metric, final String measure) {
     this.logMeasureData(metric, measure);
-    return KeyValueFormat.parseIntDateTime(measure);
+    long[] values = newDateTimeColumn(estimateLineCount(measure));
+    int lineCount = 0;
+
+    final KeyValueLineReader reader = new KeyValueLineReader(measure);
+    while (reader.next()) {
+      final int line = reader.line();
+      if (line < 1) {
+        continue;
+      }
+      if (line > values.length) {
+        final long[] grown = newDateTimeColumn(Math.max(line, values.length * 2));
+        System.arraycopy(values, 0, grown, 0, values.length);
+        values = grown;
+      }
+      values[line - 1] = reader.dateTimeValue();
+      lineCount = Math.max(lineCount, line);
+    }
+
+    return lineCount == values.length ? values : Arrays.copyOf(values, lineCount);
+  }
+
+  private static int[] internAll(final String[] symbols, final ScmSymbolTable symbolTable) {
+    if (symbols == null) {
+      return NO_SYMBOLS;
+    }
+    final int[] ids = new int[symbols.length];
+    for (int i = 0; i < symbols.length; i++) {
+      ids[i] = symbolTable.intern(symbols[i]);
+    }
+    return ids;
+  }
+
+  private static long[] newDateTimeColumn(final int size) {
+    final long[] column = new long[size];
+    Arrays.fill(column, NO_COMMIT_TIME);
+    return column;
+  }
+
+  // one pair per line in the usual case, so the separator count is a good first guess
+  static int estimateLineCount(final String measure) {
+    if (measure == null || measure.isEmpty()) {
+      return 0;
+    }
+    int count = 1;
+    int separator = measure.indexOf(';');
+    while (separator >= 0) {
+      count++;
+      separator = measure.indexOf(';', separator + 1);
+    }
+    return count;
   }
 
   private void logMeasureData(final Metric metric, final String measure) {
-    LOG.debug(metric.getName() + ": [" + measure + "]");
+    LOG.debug("{}: [{}]", metric.getName(), measure);
   }
 }
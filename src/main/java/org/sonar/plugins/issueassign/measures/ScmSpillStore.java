@@ -0,0 +1,246 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+import org.picocontainer.Startable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.issueassign.IssueAssignPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Temporary memory-mapped file in the module working directory receiving the decoded blame of files that no longer
+ * fit the blame cache, run-length encoded blame keeping its runs.  Mapped in large segments, so that the number of
+ * mappings stays low.  The regions of released files are merged with their free neighbours and reused by later spills.
+ */
+public class ScmSpillStore implements BatchExtension, Startable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ScmSpillStore.class);
+  private static final int SEGMENT_BYTES = 64 * 1024 * 1024;
+  private static final String FILE_PREFIX = "issueassign-blame";
+
+  private final boolean enabled;
+  private final File workDir;
+  private File file;
+  private RandomAccessFile randomAccessFile;
+  private FileChannel channel;
+  private ByteBuffer segment;
+  private final List<Region> freeRegions = new LinkedList<Region>();
+  private long fileLength;
+  private long liveBytes;
+  private boolean failed;
+
+  public ScmSpillStore(final Settings settings, final FileSystem fileSystem) {
+    this(settings.getBoolean(IssueAssignPlugin.PROPERTY_BLAME_SPILL), fileSystem.workDir());
+  }
+
+  ScmSpillStore(final boolean enabled, final File workDir) {
+    this.enabled = enabled;
+    this.workDir = workDir;
+  }
+
+  public boolean isEnabled() {
+    return this.enabled && !this.failed;
+  }
+
+  @Override
+  public void start() {
+    // the file is only created on the first spill
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (this.channel == null) {
+      return;
+    }
+    LOG.debug("Releasing {} MB of spilled SCM data", this.fileLength / (1024 * 1024));
+    this.segment = null;
+    this.freeRegions.clear();
+    this.channel = null;
+    closeQuietly(this.randomAccessFile);
+    this.randomAccessFile = null;
+    // the mapped segments are only unmapped once garbage collected, which some platforms require before deleting
+    if (!this.file.delete()) {
+      this.file.deleteOnExit();
+    }
+    this.file = null;
+    this.fileLength = 0;
+    this.liveBytes = 0;
+  }
+
+  /**
+   * Copies the given blame to the store and returns a view of the copy, or null if it could not be written.
+   */
+  synchronized LineBlame write(final LineBlame blame) {
+    if (!this.isEnabled()) {
+      return null;
+    }
+    // run-length blame is spilled as runs, anything else line by line
+    final RangedLineBlame ranges = blame instanceof RangedLineBlame ? (RangedLineBlame) blame : null;
+    final int entryCount = ranges == null ? blame.lineCount() : ranges.rangeCount();
+    final long length = MappedLineBlame.byteLength(entryCount, ranges != null);
+    if (length > Integer.MAX_VALUE) {
+      return null;
+    }
+
+    final Region target;
+    try {
+      target = this.allocate((int) length);
+    } catch (final IOException e) {
+      LOG.warn("Unable to spill SCM data to " + this.file + ", keeping it on the heap", e);
+      this.failed = true;
+      return null;
+    }
+
+    int position = target.offset;
+    if (ranges != null) {
+      for (int range = 0; range < entryCount; range++, position += 4) {
+        target.segment.putInt(position, ranges.rangeStart(range));
+      }
+    }
+    for (int entry = 0; entry < entryCount; entry++, position += 4) {
+      target.segment.putInt(position, blame.authorId(firstLine(ranges, entry)));
+    }
+    for (int entry = 0; entry < entryCount; entry++, position += 4) {
+      target.segment.putInt(position, blame.revisionId(firstLine(ranges, entry)));
+    }
+    for (int entry = 0; entry < entryCount; entry++, position += 8) {
+      target.segment.putLong(position, blame.commitTime(firstLine(ranges, entry)));
+    }
+    this.liveBytes += length;
+    return new MappedLineBlame(target.segment, target.offset, blame.lineCount(), entryCount, ranges != null);
+  }
+
+  /**
+   * Makes the region of a blame returned by write available to later spills.  The blame must no longer be read.
+   */
+  synchronized void release(final MappedLineBlame blame) {
+    if (this.channel == null) {
+      return;
+    }
+    final int length = blame.byteLength();
+    if (length > 0) {
+      this.free(new Region(blame.segment(), blame.offset(), length));
+      this.liveBytes -= length;
+    }
+  }
+
+  synchronized long getFileLength() {
+    return this.fileLength;
+  }
+
+  /**
+   * Number of bytes of the file holding the blame of files not released yet.
+   */
+  synchronized long getLiveBytes() {
+    return this.liveBytes;
+  }
+
+  // first fit among the released regions, then the tail of the current segment
+  private Region allocate(final int length) throws IOException {
+    final Iterator<Region> free = this.freeRegions.iterator();
+    while (free.hasNext()) {
+      final Region region = free.next();
+      if (region.length >= length) {
+        free.remove();
+        if (region.length > length) {
+          this.freeRegions.add(new Region(region.segment, region.offset + length, region.length - length));
+        }
+        return new Region(region.segment, region.offset, length);
+      }
+    }
+    final ByteBuffer target = this.segmentFor(length);
+    final Region region = new Region(target, target.position(), length);
+    target.position(target.position() + length);
+    return region;
+  }
+
+  // merges the region with the free regions around it, or gives it back to the tail of the current segment
+  private void free(final Region released) {
+    final ByteBuffer segment = released.segment;
+    int offset = released.offset;
+    int end = released.offset + released.length;
+    final Iterator<Region> free = this.freeRegions.iterator();
+    while (free.hasNext()) {
+      final Region region = free.next();
+      if (region.segment == segment && (region.offset + region.length == offset || region.offset == end)) {
+        free.remove();
+        offset = Math.min(offset, region.offset);
+        end = Math.max(end, region.offset + region.length);
+      }
+    }
+    if (segment == this.segment && end == segment.position()) {
+      segment.position(offset);
+    } else {
+      this.freeRegions.add(new Region(segment, offset, end - offset));
+    }
+  }
+
+  private static int firstLine(final RangedLineBlame ranges, final int entry) {
+    return ranges == null ? entry + 1 : ranges.rangeStart(entry);
+  }
+
+  private ByteBuffer segmentFor(final int length) throws IOException {
+    if (this.segment != null && this.segment.remaining() >= length) {
+      return this.segment;
+    }
+    if (this.channel == null) {
+      this.file = File.createTempFile(FILE_PREFIX, ".bin", this.workDir);
+      this.randomAccessFile = new RandomAccessFile(this.file, "rw");
+      this.channel = this.randomAccessFile.getChannel();
+      LOG.debug("Spilling SCM data to {}", this.file);
+    }
+    final int segmentLength = Math.max(SEGMENT_BYTES, length);
+    this.segment = this.channel.map(FileChannel.MapMode.READ_WRITE, this.fileLength, segmentLength);
+    this.fileLength += segmentLength;
+    return this.segment;
+  }
+
+  private static final class Region {
+    private final ByteBuffer segment;
+    private final int offset;
+    private final int length;
+
+    Region(final ByteBuffer segment, final int offset, final int length) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+  private static void closeQuietly(final RandomAccessFile randomAccessFile) {
+    try {
+      randomAccessFile.close();
+    } catch (final IOException e) {
+      LOG.debug("Unable to close the SCM spill file", e);
+    }
+  }
+}
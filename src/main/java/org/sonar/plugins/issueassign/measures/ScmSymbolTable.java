@@ -0,0 +1,149 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.InstantiationStrategy;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Analysis-wide dictionary of SCM authors and revisions, so per-file blame data only holds small int ids.
+ * Hexadecimal SHA-1 revisions (git, mercurial) are kept as their 20 raw bytes rather than 40 characters.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class ScmSymbolTable implements BatchExtension {
+
+  public static final int NO_SYMBOL = 0;
+
+  private static final int INITIAL_CAPACITY = 256;
+  private static final int SHA1_HEX_LENGTH = 40;
+  private static final long MAP_ENTRY_BYTES = 48;
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  // keys and symbols are either a String or a PackedRevision
+  private final Map<Object, Integer> idsBySymbol = new HashMap<Object, Integer>();
+  private Object[] symbols = new Object[INITIAL_CAPACITY];
+  private int size = 1;
+  private long estimatedBytes;
+
+  /**
+   * Returns the id of the given symbol, allocating one the first time it is seen.
+   */
+  public synchronized int intern(final String symbol) {
+    if (symbol == null) {
+      return NO_SYMBOL;
+    }
+
+    final Object key = isSha1Hex(symbol) ? new PackedRevision(pack(symbol)) : symbol;
+    final Integer id = this.idsBySymbol.get(key);
+    if (id != null) {
+      return id;
+    }
+
+    if (this.size == this.symbols.length) {
+      this.symbols = Arrays.copyOf(this.symbols, this.symbols.length * 2);
+    }
+    final int newId = this.size++;
+    this.symbols[newId] = key;
+    this.idsBySymbol.put(key, newId);
+    this.estimatedBytes += MAP_ENTRY_BYTES + (key instanceof PackedRevision
+      ? PackedRevision.ESTIMATED_BYTES : MemorySizes.ofString(symbol));
+    return newId;
+  }
+
+  /**
+   * Returns the symbol for the given id, or null for NO_SYMBOL.
+   */
+  public synchronized String symbol(final int id) {
+    if (id <= NO_SYMBOL || id >= this.size) {
+      return null;
+    }
+    final Object symbol = this.symbols[id];
+    return symbol instanceof PackedRevision ? ((PackedRevision) symbol).toHex() : (String) symbol;
+  }
+
+  public synchronized int size() {
+    return this.size - 1;
+  }
+
+  /**
+   * Approximate number of heap bytes held by the table.
+   */
+  public synchronized long estimatedBytes() {
+    return this.estimatedBytes + MemorySizes.ofIntArray(this.symbols.length);
+  }
+
+  // lower case only, so that unpacking gives back the exact symbol
+  private static boolean isSha1Hex(final String symbol) {
+    if (symbol.length() != SHA1_HEX_LENGTH) {
+      return false;
+    }
+    for (int i = 0; i < SHA1_HEX_LENGTH; i++) {
+      final char c = symbol.charAt(i);
+      if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static byte[] pack(final String hex) {
+    final byte[] bytes = new byte[hex.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (Character.digit(hex.charAt(2 * i), 16) << 4 | Character.digit(hex.charAt(2 * i + 1), 16));
+    }
+    return bytes;
+  }
+
+  private static final class PackedRevision {
+
+    private static final long ESTIMATED_BYTES = 16 + MemorySizes.ofByteArray(SHA1_HEX_LENGTH / 2);
+
+    private final byte[] bytes;
+    private final int hash;
+
+    PackedRevision(final byte[] bytes) {
+      this.bytes = bytes;
+      this.hash = Arrays.hashCode(bytes);
+    }
+
+    String toHex() {
+      final char[] hex = new char[this.bytes.length * 2];
+      for (int i = 0; i < this.bytes.length; i++) {
+        hex[2 * i] = HEX_DIGITS[(this.bytes[i] >> 4) & 0xf];
+        hex[2 * i + 1] = HEX_DIGITS[this.bytes[i] & 0xf];
+      }
+      return new String(hex);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      return other instanceof PackedRevision && Arrays.equals(this.bytes, ((PackedRevision) other).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hash;
+    }
+  }
+}
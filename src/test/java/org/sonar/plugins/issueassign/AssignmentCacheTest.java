@@ -0,0 +1,140 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.config.Settings;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.resources.Project;
+import org.sonar.api.user.User;
+
+import java.io.File;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AssignmentCacheTest {
+
+  private static final String COMPONENT_KEY = "module:src/Foo.java";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private final Settings settings = new Settings();
+  private final FileSystem fileSystem = mock(FileSystem.class);
+  private final Project module = mock(Project.class);
+  private final ResourceFinder resourceFinder = mock(ResourceFinder.class);
+  private final InputFile inputFile = mock(InputFile.class);
+  private final Issue issue = mock(Issue.class);
+  private final User user = mock(User.class);
+
+  @Before
+  public void setUp() throws Exception {
+    final File directory = temp.newFolder();
+    settings.setProperty(IssueAssignPlugin.PROPERTY_ENABLED, true);
+    settings.setProperty(IssueAssignPlugin.PROPERTY_ASSIGNMENT_CACHE_DIR, "cache");
+    when(fileSystem.resolvePath("cache")).thenReturn(directory);
+    when(module.getEffectiveKey()).thenReturn("group:module");
+    when(resourceFinder.findInputFile(COMPONENT_KEY)).thenReturn(inputFile);
+    when(issue.key()).thenReturn("issue1");
+    when(issue.componentKey()).thenReturn(COMPONENT_KEY);
+    when(user.login()).thenReturn("login");
+    when(user.name()).thenReturn("Some Name");
+  }
+
+  @Test
+  public void testDecisionsOfUnchangedFilesAreReused() {
+    this.recordAndStop(123L, user);
+    when(inputFile.status()).thenReturn(InputFile.Status.SAME);
+
+    final AssignmentCache.Decision decision = this.newCache().lookup(issue);
+
+    assertThat(decision).isNotNull();
+    assertThat(decision.getCommitTime()).isEqualTo(123L);
+    assertThat(decision.getAssignee().login()).isEqualTo("login");
+    assertThat(decision.getAssignee().name()).isEqualTo("Some Name");
+  }
+
+  @Test
+  public void testDecisionWithoutAssignee() {
+    this.recordAndStop(null, null);
+    when(inputFile.status()).thenReturn(InputFile.Status.SAME);
+
+    final AssignmentCache.Decision decision = this.newCache().lookup(issue);
+
+    assertThat(decision.getCommitTime()).isNull();
+    assertThat(decision.getAssignee()).isNull();
+  }
+
+  @Test
+  public void testDecisionsOfChangedFilesAreIgnored() {
+    this.recordAndStop(123L, user);
+    when(inputFile.status()).thenReturn(InputFile.Status.CHANGED);
+
+    assertThat(this.newCache().lookup(issue)).isNull();
+  }
+
+  @Test
+  public void testDecisionsAreIgnoredWhenSettingsChange() {
+    this.recordAndStop(123L, user);
+    when(inputFile.status()).thenReturn(InputFile.Status.SAME);
+    settings.setProperty(IssueAssignPlugin.PROPERTY_DEFAULT_ASSIGNEE, "someone");
+
+    assertThat(this.newCache().lookup(issue)).isNull();
+  }
+
+  @Test
+  public void testReusedDecisionsAreKept() {
+    this.recordAndStop(123L, user);
+    when(inputFile.status()).thenReturn(InputFile.Status.SAME);
+    final AssignmentCache classUnderTest = this.newCache();
+    classUnderTest.lookup(issue);
+    classUnderTest.stop();
+
+    assertThat(this.newCache().lookup(issue)).isNotNull();
+  }
+
+  @Test
+  public void testDisabledWithoutDirectory() {
+    settings.removeProperty(IssueAssignPlugin.PROPERTY_ASSIGNMENT_CACHE_DIR);
+    this.recordAndStop(123L, user);
+    when(inputFile.status()).thenReturn(InputFile.Status.SAME);
+
+    assertThat(this.newCache().lookup(issue)).isNull();
+  }
+
+  private AssignmentCache newCache() {
+    final AssignmentCache cache = new AssignmentCache(settings, fileSystem, module, resourceFinder);
+    cache.start();
+    return cache;
+  }
+
+  private void recordAndStop(final Long commitTime, final User assignee) {
+    final AssignmentCache cache = this.newCache();
+    cache.record(issue, commitTime, assignee);
+    cache.stop();
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.plugins.issueassign.exception.MissingScmMeasureDataException;
+import org.sonar.plugins.issueassign.measures.LastCommitSummary;
+import org.sonar.plugins.issueassign.measures.ScmMeasures;
+import org.sonar.plugins.issueassign.measures.ScmSpillStore;
+import org.sonar.plugins.issueassign.measures.ScmSymbolTable;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BlameCacheTest {
+
+  private static final long ONE_MB = 1024L * 1024L;
+
+  @Test
+  public void testHitsAndMisses() throws Exception {
+    final BlameCache classUnderTest = new BlameCache(1);
+    final ScmMeasures measures = measures(1024);
+
+    assertThat(classUnderTest.getMeasures("file1")).isNull();
+    classUnderTest.putMeasures("file1", measures);
+    assertThat(classUnderTest.getMeasures("file1")).isSameAs(measures);
+    assertThat(classUnderTest.getMeasures("file1")).isSameAs(measures);
+
+    assertThat(classUnderTest.getHits()).isEqualTo(2);
+    assertThat(classUnderTest.getMisses()).isEqualTo(1);
+    assertThat(classUnderTest.getEvictions()).isZero();
+  }
+
+  @Test
+  public void testClear() throws Exception {
+    final BlameCache classUnderTest = new BlameCache(1);
+    classUnderTest.putMeasures("file1", measures(1024));
+    classUnderTest.putFailure("file2", new MissingScmMeasureDataException());
+
+    classUnderTest.clear();
+
+    assertThat(classUnderTest.size()).isZero();
+    assertThat(classUnderTest.getTotalBytes()).isZero();
+    assertThat(classUnderTest.getMeasures("file1")).isNull();
+    assertThat(classUnderTest.getFailure("file2")).isNull();
+  }
+
+  @Test
+  public void testShrinkReleasesHalf() throws Exception {
+    final BlameCache classUnderTest = new BlameCache(1);
+    classUnderTest.putMeasures("file1", measures(100 * 1024));
+    classUnderTest.putMeasures("file2", measures(100 * 1024));
+    final long before = classUnderTest.getTotalBytes();
+
+    final long released = classUnderTest.shrink();
+
+    assertThat(released).isGreaterThanOrEqualTo(before / 2);
+    assertThat(classUnderTest.getMeasures("file1")).isNull();
+    assertThat(classUnderTest.getMeasures("file2")).isNotNull();
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() throws Exception {
+    final BlameCache classUnderTest = new BlameCache(1);
+
+    classUnderTest.putMeasures("file1", measures(400 * 1024));
+    classUnderTest.putMeasures("file2", measures(400 * 1024));
+    classUnderTest.getMeasures("file1");
+    classUnderTest.putMeasures("file3", measures(400 * 1024));
+
+    assertThat(classUnderTest.getMeasures("file2")).isNull();
+    assertThat(classUnderTest.getMeasures("file1")).isNotNull();
+    assertThat(classUnderTest.getMeasures("file3")).isNotNull();
+    assertThat(classUnderTest.getEvictions()).isEqualTo(1);
+    assertThat(classUnderTest.getTotalBytes()).isLessThanOrEqualTo(ONE_MB);
+  }
+
+  @Test
+  public void testHasRoom() throws Exception {
+    final BlameCache classUnderTest = new BlameCache(1);
+    assertThat(classUnderTest.hasRoom()).isTrue();
+
+    classUnderTest.putMeasures("file1", measures(2 * ONE_MB));
+
+    assertThat(classUnderTest.hasRoom()).isFalse();
+  }
+
+  @Test
+  public void testKeepsOversizedEntryInUse() throws Exception {
+    final BlameCache classUnderTest = new BlameCache(1);
+    final ScmMeasures measures = measures(2 * ONE_MB);
+
+    classUnderTest.putMeasures("file1", measures);
+
+    assertThat(classUnderTest.getMeasures("file1")).isSameAs(measures);
+    assertThat(classUnderTest.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testReweighsOnAccess() throws Exception {
+    final BlameCache classUnderTest = new BlameCache(1);
+    final ScmMeasures measures = measures(1024);
+    classUnderTest.putMeasures("file1", measures);
+    final long before = classUnderTest.getTotalBytes();
+
+    when(measures.getRetainedBytes()).thenReturn(64L);
+    classUnderTest.getMeasures("file1");
+
+    assertThat(classUnderTest.getTotalBytes()).isEqualTo(before - 1024 + 64);
+  }
+
+  @Test
+  public void testLastCommitSummaryIsEvictedWithMeasures() throws Exception {
+    final BlameCache classUnderTest = new BlameCache(1);
+    classUnderTest.putMeasures("file1", measures(1024));
+    classUnderTest.putLastCommitSummary("file1", LastCommitSummary.of(
+      new ScmMeasures("file1", "1=author", "1=2014-01-01T12:12:12-0800", "", new ScmSymbolTable())));
+
+    assertThat(classUnderTest.getLastCommitSummary("file1")).isNotNull();
+
+    classUnderTest.putMeasures("file2", measures(2 * ONE_MB));
+
+    assertThat(classUnderTest.getLastCommitSummary("file1")).isNull();
+  }
+
+  @Test
+  public void testSpillsInsteadOfEvicting() throws Exception {
+    final ScmSpillStore spillStore = mock(ScmSpillStore.class);
+    final BlameCache classUnderTest = new BlameCache(1, spillStore);
+    final ScmMeasures spillable = measures(800 * 1024);
+    when(spillable.spillTo(spillStore)).thenAnswer(new Answer<Boolean>() {
+      @Override
+      public Boolean answer(final InvocationOnMock invocation) throws Throwable {
+        when(spillable.getRetainedBytes()).thenReturn(32L);
+        when(spillable.isSpilled()).thenReturn(true);
+        return true;
+      }
+    });
+
+    classUnderTest.putMeasures("file1", spillable);
+    classUnderTest.putMeasures("file2", measures(800 * 1024));
+
+    assertThat(classUnderTest.getSpills()).isEqualTo(1);
+    assertThat(classUnderTest.getEvictions()).isZero();
+    assertThat(classUnderTest.getMeasures("file1")).isSameAs(spillable);
+    assertThat(classUnderTest.getTotalBytes()).isLessThanOrEqualTo(ONE_MB);
+  }
+
+  @Test
+  public void testKeepsSpillingOverRepeatedPasses() throws Exception {
+    final ScmSpillStore spillStore = mock(ScmSpillStore.class);
+    final BlameCache classUnderTest = new BlameCache(1, spillStore);
+    final ScmMeasures[] files = new ScmMeasures[20];
+
+    for (int i = 0; i < files.length; i++) {
+      files[i] = spillable(400 * 1024, 32, spillStore);
+      classUnderTest.putMeasures("file" + i, files[i]);
+    }
+
+    assertThat(classUnderTest.getEvictions()).isZero();
+    assertThat(classUnderTest.getSpills()).isEqualTo(files.length - 2);
+    assertThat(classUnderTest.size()).isEqualTo(files.length);
+    assertThat(classUnderTest.getTotalBytes()).isLessThanOrEqualTo(ONE_MB);
+    for (int i = 0; i < files.length; i++) {
+      assertThat(classUnderTest.getMeasures("file" + i)).isSameAs(files[i]);
+      verify(files[i], never()).releaseSpilled(spillStore);
+    }
+  }
+
+  @Test
+  public void testEvictsSpilledEntriesLast() throws Exception {
+    final ScmSpillStore spillStore = mock(ScmSpillStore.class);
+    final BlameCache classUnderTest = new BlameCache(1, spillStore);
+    final ScmMeasures spilled = spillable(400 * 1024, 300 * 1024, spillStore);
+    final ScmMeasures unspillable = measures(400 * 1024);
+
+    classUnderTest.putMeasures("file1", spilled);
+    classUnderTest.putMeasures("file2", unspillable);
+    classUnderTest.putMeasures("file3", measures(600 * 1024));
+
+    assertThat(classUnderTest.getSpills()).isEqualTo(1);
+    assertThat(classUnderTest.getEvictions()).isEqualTo(1);
+    assertThat(classUnderTest.getMeasures("file2")).isNull();
+    assertThat(classUnderTest.getMeasures("file1")).isSameAs(spilled);
+
+    classUnderTest.putMeasures("file4", measures(900 * 1024));
+
+    assertThat(classUnderTest.getEvictions()).isEqualTo(3);
+    assertThat(classUnderTest.getMeasures("file1")).isNull();
+    assertThat(classUnderTest.getMeasures("file3")).isNull();
+    verify(spilled).releaseSpilled(spillStore);
+  }
+
+  @Test
+  public void testLookupsDoNotWaitForSpillsOfOtherFiles() throws Exception {
+    final ScmSpillStore spillStore = mock(ScmSpillStore.class);
+    final BlameCache classUnderTest = new BlameCache(1, spillStore);
+    final CountDownLatch spilling = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ScmMeasures inUse = measures(100 * 1024);
+    final ScmMeasures slowToSpill = measures(800 * 1024);
+    when(slowToSpill.spillTo(spillStore)).thenAnswer(new Answer<Boolean>() {
+      @Override
+      public Boolean answer(final InvocationOnMock invocation) throws Throwable {
+        spilling.countDown();
+        release.await(10, TimeUnit.SECONDS);
+        return false;
+      }
+    });
+    classUnderTest.putMeasures("file1", slowToSpill);
+    classUnderTest.putMeasures("file2", inUse);
+    final Thread loader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        classUnderTest.putMeasures("file3", measures(400 * 1024));
+      }
+    });
+    loader.start();
+    assertThat(spilling.await(10, TimeUnit.SECONDS)).isTrue();
+
+    final long start = System.currentTimeMillis();
+    assertThat(classUnderTest.getMeasures("file2")).isSameAs(inUse);
+    assertThat(System.currentTimeMillis() - start).isLessThan(5000L);
+
+    release.countDown();
+    loader.join(10000);
+    assertThat(classUnderTest.getTotalBytes()).isLessThanOrEqualTo(ONE_MB);
+  }
+
+  @Test
+  public void testRemembersFailures() throws Exception {
+    final BlameCache classUnderTest = new BlameCache(1);
+    final MissingScmMeasureDataException failure = new MissingScmMeasureDataException();
+
+    assertThat(classUnderTest.getFailure("file1")).isNull();
+    classUnderTest.putFailure("file1", failure);
+
+    assertThat(classUnderTest.getFailure("file1")).isSameAs(failure);
+    assertThat(classUnderTest.getMeasures("file1")).isNull();
+    assertThat(classUnderTest.getFailureCount()).isEqualTo(1);
+    assertThat(classUnderTest.getFailureHits()).isEqualTo(1);
+  }
+
+  private static ScmMeasures spillable(final long bytes, final long spilledBytes, final ScmSpillStore spillStore) {
+    final ScmMeasures measures = measures(bytes);
+    when(measures.spillTo(spillStore)).thenAnswer(new Answer<Boolean>() {
+      @Override
+      public Boolean answer(final InvocationOnMock invocation) throws Throwable {
+        when(measures.getRetainedBytes()).thenReturn(spilledBytes);
+        when(measures.isSpilled()).thenReturn(true);
+        return true;
+      }
+    });
+    return measures;
+  }
+
+  private static ScmMeasures measures(final long bytes) {
+    final ScmMeasures measures = mock(ScmMeasures.class);
+    when(measures.getRetainedBytes()).thenReturn(bytes);
+    return measures;
+  }
+}
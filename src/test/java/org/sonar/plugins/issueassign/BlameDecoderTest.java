@@ -0,0 +1,103 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.issueassign.measures.ScmMeasures;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class BlameDecoderTest {
+
+  private BlameDecoder classUnderTest;
+
+  @After
+  public void tearDown() {
+    this.classUnderTest.stop();
+  }
+
+  @Test
+  public void testDecodesOnDemandWithoutWorkers() {
+    this.classUnderTest = new BlameDecoder(settings(0));
+    this.classUnderTest.start();
+    final ScmMeasures measures = mock(ScmMeasures.class);
+
+    this.classUnderTest.decodeAhead("file1", measures);
+
+    verifyZeroInteractions(measures);
+  }
+
+  @Test
+  public void testDecodesAheadOnWorkers() {
+    this.classUnderTest = new BlameDecoder(settings(2));
+    this.classUnderTest.start();
+    final ScmMeasures measures = mock(ScmMeasures.class);
+
+    this.classUnderTest.decodeAhead("file1", measures);
+
+    verify(measures, timeout(5000)).decode();
+  }
+
+  @Test
+  public void testCoalescesInFlightDecodes() throws Exception {
+    this.classUnderTest = new BlameDecoder(settings(1));
+    this.classUnderTest.start();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ScmMeasures measures = mock(ScmMeasures.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(final InvocationOnMock invocation) throws Throwable {
+        started.countDown();
+        release.await(5, TimeUnit.SECONDS);
+        return null;
+      }
+    }).when(measures).decode();
+
+    this.classUnderTest.decodeAhead("file1", measures);
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    this.classUnderTest.decodeAhead("file1", measures);
+    assertThat(this.classUnderTest.inFlightCount()).isEqualTo(1);
+    release.countDown();
+
+    verify(measures, timeout(5000).times(1)).decode();
+    Thread.sleep(100);
+    verify(measures, times(1)).decode();
+  }
+
+  private static Settings settings(final int threads) {
+    final Settings settings = new Settings();
+    settings.setProperty(IssueAssignPlugin.PROPERTY_BLAME_DECODE_THREADS, threads);
+    return settings;
+  }
+}
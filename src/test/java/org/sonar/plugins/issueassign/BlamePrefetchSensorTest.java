@@ -0,0 +1,111 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.fs.FilePredicate;
+import org.sonar.api.batch.fs.FilePredicates;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Project;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BlamePrefetchSensorTest {
+
+  @Mock
+  private Settings settings;
+  @Mock
+  private FileSystem fileSystem;
+  @Mock
+  private FilePredicates predicates;
+  @Mock
+  private FilePredicate all;
+  @Mock
+  private Blame blame;
+  @Mock
+  private Project module;
+  @Mock
+  private SensorContext context;
+
+  @InjectMocks
+  private BlamePrefetchSensor classUnderTest;
+
+  private static final String MODULE_KEY = "org:project";
+
+  @Before
+  public void setUp() {
+    when(module.getEffectiveKey()).thenReturn(MODULE_KEY);
+    when(fileSystem.predicates()).thenReturn(predicates);
+    when(predicates.all()).thenReturn(all);
+    final List<InputFile> inputFiles = Arrays.asList(inputFile("src/A.java"), inputFile("src/B.java"));
+    when(fileSystem.inputFiles(all)).thenReturn(inputFiles);
+  }
+
+  @Test
+  public void testExecutesOnlyWhenEnabled() {
+    when(settings.getBoolean(IssueAssignPlugin.PROPERTY_ENABLED)).thenReturn(true);
+    assertThat(classUnderTest.shouldExecuteOnProject(module)).isFalse();
+
+    when(settings.getBoolean(IssueAssignPlugin.PROPERTY_BLAME_PREFETCH)).thenReturn(true);
+    assertThat(classUnderTest.shouldExecuteOnProject(module)).isTrue();
+  }
+
+  @Test
+  public void testPrefetchesEveryFile() {
+    when(blame.prefetch(anyString())).thenReturn(true);
+
+    classUnderTest.analyse(module, context);
+
+    verify(blame).prefetch(MODULE_KEY + ":src/A.java");
+    verify(blame).prefetch(MODULE_KEY + ":src/B.java");
+  }
+
+  @Test
+  public void testStopsWhenCacheIsFull() {
+    when(blame.prefetch(anyString())).thenReturn(false);
+
+    classUnderTest.analyse(module, context);
+
+    verify(blame, times(1)).prefetch(anyString());
+  }
+
+  private static InputFile inputFile(final String relativePath) {
+    final InputFile inputFile = mock(InputFile.class);
+    when(inputFile.relativePath()).thenReturn(relativePath);
+    return inputFile;
+  }
+}
@@ -28,19 +28,33 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.sonar.api.config.Settings;
 import org.sonar.api.issue.Issue;
 import org.sonar.api.resources.Resource;
+import org.sonar.api.utils.KeyValueFormat;
 import org.sonar.plugins.issueassign.exception.MissingScmMeasureDataException;
 import org.sonar.plugins.issueassign.exception.NoUniqueAuthorForLastCommitException;
+import org.sonar.plugins.issueassign.exception.ResourceNotFoundException;
 import org.sonar.plugins.issueassign.measures.MeasuresFinder;
+import org.sonar.plugins.issueassign.measures.ScmDataSource;
 import org.sonar.plugins.issueassign.measures.ScmMeasures;
+import org.sonar.plugins.issueassign.measures.ScmSymbolTable;
 
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -51,8 +65,6 @@ public class BlameTest {
   @Mock
   private ScmMeasures scmMeasures;
   @Mock
-  private Map authorMap;
-  @Mock
   private ResourceFinder resourceFinder;
   @Mock
   private MeasuresFinder measuresFinder;
@@ -60,6 +72,8 @@ public class BlameTest {
   private Resource resource;
   @Mock
   private Settings settings;
+  @Mock
+  private BlameDecoder decoder;
 
   @InjectMocks
   private Blame testSubject;
@@ -86,6 +100,8 @@ public class BlameTest {
     DATE1 = SIMPLE_DATE_FORMAT.parse(DATE1_STRING);
     DATE2 = SIMPLE_DATE_FORMAT.parse(DATE2_STRING);
     DATE3 = SIMPLE_DATE_FORMAT.parse(DATE3_STRING);
+
+    when(measuresFinder.capabilities()).thenReturn(EnumSet.allOf(ScmDataSource.Capability.class));
   }
 
   @Test
@@ -104,19 +120,18 @@ public class BlameTest {
     lastCommitDateMap.put(4, DATE3);
 
     when(resourceFinder.find(COMPONENT_KEY)).thenReturn(resource);
-    when(measuresFinder.getMeasures(resource)).thenReturn(scmMeasures);
-    when(scmMeasures.getAuthorsByLine()).thenReturn(authorMap);
-    when(scmMeasures.getLastCommitsByLine()).thenReturn(lastCommitDateMap);
+    when(measuresFinder.getMeasures(resource)).thenReturn(scmMeasures(authorMap, lastCommitDateMap));
 
     when(issue.componentKey()).thenReturn(COMPONENT_KEY);
     when(issue.line()).thenReturn(1);
 
     final String author = testSubject.getScmAuthorForIssue(issue, false);
     assertThat(author).isEqualTo(AUTHOR1);
+    verify(decoder).decodeAhead(eq(COMPONENT_KEY), any(ScmMeasures.class));
   }
 
   @Test
-  public void getCommitDateForIssueWithLineNumber() throws Exception {
+  public void getCommitTimeForIssueWithLineNumber() throws Exception {
 
     final int issueLineNumber = 1;
 
@@ -129,15 +144,14 @@ public class BlameTest {
     when(issue.line()).thenReturn(issueLineNumber);
     when(issue.componentKey()).thenReturn(COMPONENT_KEY);
     when(resourceFinder.find(COMPONENT_KEY)).thenReturn(resource);
-    when(measuresFinder.getMeasures(resource)).thenReturn(scmMeasures);
-    when(scmMeasures.getLastCommitsByLine()).thenReturn(lastCommitDateMap);
+    when(measuresFinder.getMeasures(resource)).thenReturn(scmMeasures(new HashMap<Integer, String>(), lastCommitDateMap));
 
-    final Date commitDate = testSubject.getCommitDateForIssue(issue);
-    assertThat(commitDate).isEqualTo(DATE1);
+    final long commitTime = testSubject.getCommitTimeForIssue(issue);
+    assertThat(commitTime).isEqualTo(DATE1.getTime());
   }
 
   @Test
-  public void getCommitDateForIssueWithNoLineNumber() throws Exception {
+  public void getCommitTimeForIssueWithNoLineNumber() throws Exception {
 
     final Map<Integer, Date> lastCommitDateMap = new HashMap<Integer, Date>();
     lastCommitDateMap.put(1, DATE1);
@@ -148,11 +162,10 @@ public class BlameTest {
     when(issue.line()).thenReturn(null);
     when(issue.componentKey()).thenReturn(COMPONENT_KEY);
     when(resourceFinder.find(COMPONENT_KEY)).thenReturn(resource);
-    when(measuresFinder.getMeasures(resource)).thenReturn(scmMeasures);
-    when(scmMeasures.getLastCommitsByLine()).thenReturn(lastCommitDateMap);
+    when(measuresFinder.getMeasures(resource)).thenReturn(scmMeasures(new HashMap<Integer, String>(), lastCommitDateMap));
 
-    final Date commitDate = testSubject.getCommitDateForIssue(issue);
-    assertThat(commitDate).isEqualTo(DATE3);
+    final long commitTime = testSubject.getCommitTimeForIssue(issue);
+    assertThat(commitTime).isEqualTo(DATE3.getTime());
   }
 
   @Test
@@ -167,6 +180,9 @@ public class BlameTest {
   @Test
   public void assignBlamelessToLastCommitter() throws Exception {
 
+    final Map<Integer, String> authorMap = new HashMap<Integer, String>();
+    authorMap.put(3, AUTHOR3);
+
     final Map<Integer, Date> lastCommitDateMap = new HashMap<Integer, Date>();
     lastCommitDateMap.put(1, DATE1);
     lastCommitDateMap.put(2, DATE2);
@@ -176,10 +192,7 @@ public class BlameTest {
     when(settings.getBoolean(IssueAssignPlugin.PROPERTY_ASSIGN_BLAMELESS_TO_LAST_COMMITTER)).thenReturn(true);
     when(issue.componentKey()).thenReturn(COMPONENT_KEY);
     when(resourceFinder.find(COMPONENT_KEY)).thenReturn(resource);
-    when(measuresFinder.getMeasures(resource)).thenReturn(scmMeasures);
-    when(scmMeasures.getLastCommitsByLine()).thenReturn(lastCommitDateMap);
-    when(scmMeasures.getAuthorsByLine()).thenReturn(authorMap);
-    when(authorMap.get(3)).thenReturn(AUTHOR3);
+    when(measuresFinder.getMeasures(resource)).thenReturn(scmMeasures(authorMap, lastCommitDateMap));
 
     final String author = testSubject.getScmAuthorForIssue(issue, false);
     assertThat(author).isEqualTo(AUTHOR3);
@@ -199,9 +212,7 @@ public class BlameTest {
     lastCommitDateMap.put(3, DATE3);
 
     when(resourceFinder.find(COMPONENT_KEY)).thenReturn(resource);
-    when(measuresFinder.getMeasures(resource)).thenReturn(scmMeasures);
-    when(scmMeasures.getAuthorsByLine()).thenReturn(authorMap);
-    when(scmMeasures.getLastCommitsByLine()).thenReturn(lastCommitDateMap);
+    when(measuresFinder.getMeasures(resource)).thenReturn(scmMeasures(authorMap, lastCommitDateMap));
 
     when(issue.componentKey()).thenReturn(COMPONENT_KEY);
     when(issue.line()).thenReturn(1);
@@ -210,14 +221,285 @@ public class BlameTest {
     assertThat(author).isEqualTo(AUTHOR3);
   }
 
+  @Test
+  public void testLastCommitterIsComputedOncePerResource() throws Exception {
+
+    final Map<Integer, String> authorMap = new HashMap<Integer, String>();
+    authorMap.put(1, AUTHOR1);
+    authorMap.put(2, AUTHOR2);
+
+    final Map<Integer, Date> lastCommitDateMap = new HashMap<Integer, Date>();
+    lastCommitDateMap.put(1, DATE1);
+    lastCommitDateMap.put(2, DATE3);
+
+    final ScmMeasures measures = spy(scmMeasures(authorMap, lastCommitDateMap));
+    when(resourceFinder.find(COMPONENT_KEY)).thenReturn(resource);
+    when(measuresFinder.getMeasures(resource)).thenReturn(measures);
+    when(issue.componentKey()).thenReturn(COMPONENT_KEY);
+    when(issue.line()).thenReturn(null);
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(testSubject.getScmAuthorForIssue(issue, true)).isEqualTo(AUTHOR2);
+      assertThat(testSubject.getCommitTimeForIssue(issue)).isEqualTo(DATE3.getTime());
+    }
+
+    verify(measuresFinder, times(1)).getMeasures(resource);
+    verify(measures, times(1)).getLineCount();
+  }
+
   @Test(expected = MissingScmMeasureDataException.class)
   public void testGetAuthorWithMissingMeasures() throws Exception {
     when(measuresFinder.getMeasures(resource)).thenReturn(scmMeasures);
-    when(scmMeasures.getAuthorsByLine()).thenReturn(null);
 
     testSubject.getScmAuthorForIssue(issue, false);
   }
 
+  @Test
+  public void testGetAuthorOfNewestLineInWindow() throws Exception {
+
+    final Map<Integer, String> authorMap = new HashMap<Integer, String>();
+    authorMap.put(1, AUTHOR1);
+    authorMap.put(2, AUTHOR2);
+    authorMap.put(3, AUTHOR3);
+    authorMap.put(4, AUTHOR1);
+
+    final Map<Integer, Date> lastCommitDateMap = new HashMap<Integer, Date>();
+    lastCommitDateMap.put(1, DATE1);
+    lastCommitDateMap.put(2, DATE2);
+    lastCommitDateMap.put(3, DATE3);
+    lastCommitDateMap.put(4, DATE1);
+
+    when(settings.getInt(IssueAssignPlugin.PROPERTY_BLAME_LINE_WINDOW)).thenReturn(2);
+    when(resourceFinder.find(COMPONENT_KEY)).thenReturn(resource);
+    when(measuresFinder.getMeasures(resource)).thenReturn(scmMeasures(authorMap, lastCommitDateMap));
+    when(issue.componentKey()).thenReturn(COMPONENT_KEY);
+    when(issue.line()).thenReturn(1);
+
+    assertThat(testSubject.getScmAuthorForIssue(issue, false)).isEqualTo(AUTHOR3);
+    assertThat(testSubject.getCommitTimeForIssue(issue)).isEqualTo(DATE3.getTime());
+  }
+
+  @Test
+  public void testPrefetchWarmsTheCache() throws Exception {
+
+    final Map<Integer, String> authorMap = new HashMap<Integer, String>();
+    authorMap.put(1, AUTHOR1);
+
+    final Map<Integer, Date> lastCommitDateMap = new HashMap<Integer, Date>();
+    lastCommitDateMap.put(1, DATE1);
+
+    when(settings.getInt(IssueAssignPlugin.PROPERTY_BLAME_CACHE_SIZE)).thenReturn(1);
+    testSubject = new Blame(resourceFinder, measuresFinder, settings);
+    when(resourceFinder.find(COMPONENT_KEY)).thenReturn(resource);
+    when(measuresFinder.getMeasures(resource)).thenReturn(scmMeasures(authorMap, lastCommitDateMap));
+    when(issue.componentKey()).thenReturn(COMPONENT_KEY);
+    when(issue.line()).thenReturn(1);
+
+    assertThat(testSubject.prefetch(COMPONENT_KEY)).isTrue();
+    assertThat(testSubject.getScmAuthorForIssue(issue, false)).isEqualTo(AUTHOR1);
+
+    verify(measuresFinder, times(1)).getMeasures(resource);
+  }
+
+  @Test
+  public void testPrefetchIgnoresMissingMeasures() throws Exception {
+    when(resourceFinder.find(COMPONENT_KEY)).thenThrow(new ResourceNotFoundException());
+
+    assertThat(testSubject.prefetch(COMPONENT_KEY)).isTrue();
+    verify(decoder, never()).decodeAhead(eq(COMPONENT_KEY), any(ScmMeasures.class));
+  }
+
+  @Test
+  public void testPrefetchDecodesAhead() throws Exception {
+    final Map<Integer, String> authorMap = new HashMap<Integer, String>();
+    authorMap.put(1, AUTHOR1);
+    final Map<Integer, Date> lastCommitDateMap = new HashMap<Integer, Date>();
+    lastCommitDateMap.put(1, DATE1);
+    final ScmMeasures measures = scmMeasures(authorMap, lastCommitDateMap);
+    when(resourceFinder.find(COMPONENT_KEY)).thenReturn(resource);
+    when(measuresFinder.getMeasures(resource)).thenReturn(measures);
+
+    assertThat(testSubject.prefetch(COMPONENT_KEY)).isTrue();
+
+    verify(decoder).decodeAhead(COMPONENT_KEY, measures);
+  }
+
+  @Test
+  public void testUsesRegisteredDataSource() throws Exception {
+
+    final Map<Integer, String> authorMap = new HashMap<Integer, String>();
+    authorMap.put(1, AUTHOR2);
+
+    final Map<Integer, Date> lastCommitDateMap = new HashMap<Integer, Date>();
+    lastCommitDateMap.put(1, DATE1);
+
+    final ScmDataSource dataSource = mock(ScmDataSource.class);
+    when(dataSource.capabilities()).thenReturn(EnumSet.allOf(ScmDataSource.Capability.class));
+    when(dataSource.getMeasures(resource)).thenReturn(scmMeasures(authorMap, lastCommitDateMap));
+    when(resourceFinder.find(COMPONENT_KEY)).thenReturn(resource);
+    when(issue.componentKey()).thenReturn(COMPONENT_KEY);
+    when(issue.line()).thenReturn(1);
+
+    testSubject = new Blame(resourceFinder, measuresFinder, new ScmDataSource[] {measuresFinder, dataSource}, settings,
+      decoder, null, null);
+
+    assertThat(testSubject.getScmAuthorForIssue(issue, false)).isEqualTo(AUTHOR2);
+    verifyZeroInteractions(measuresFinder);
+  }
+
+  @Test
+  public void testFileLevelDataSourceSkipsLineLookups() throws Exception {
+
+    final Map<Integer, String> authorMap = new HashMap<Integer, String>();
+    authorMap.put(1, AUTHOR1);
+    authorMap.put(2, AUTHOR2);
+
+    final Map<Integer, Date> lastCommitDateMap = new HashMap<Integer, Date>();
+    lastCommitDateMap.put(1, DATE2);
+    lastCommitDateMap.put(2, DATE3);
+
+    when(measuresFinder.capabilities()).thenReturn(EnumSet.of(ScmDataSource.Capability.FILE));
+    when(settings.getBoolean(IssueAssignPlugin.PROPERTY_ASSIGN_BLAMELESS_TO_LAST_COMMITTER)).thenReturn(true);
+    when(resourceFinder.find(COMPONENT_KEY)).thenReturn(resource);
+    when(measuresFinder.getMeasures(resource)).thenReturn(scmMeasures(authorMap, lastCommitDateMap));
+    when(issue.componentKey()).thenReturn(COMPONENT_KEY);
+    when(issue.line()).thenReturn(1);
+
+    assertThat(testSubject.getScmAuthorForIssue(issue, false)).isEqualTo(AUTHOR2);
+    assertThat(testSubject.getCommitTimeForIssue(issue)).isEqualTo(DATE3.getTime());
+  }
+
+  @Test(expected = MissingScmMeasureDataException.class)
+  public void testLineLevelDataSourceHasNoLastCommitter() throws Exception {
+    when(measuresFinder.capabilities()).thenReturn(EnumSet.of(ScmDataSource.Capability.LINE));
+    when(issue.componentKey()).thenReturn(COMPONENT_KEY);
+
+    try {
+      testSubject.getScmAuthorForIssue(issue, true);
+    } finally {
+      verifyZeroInteractions(resourceFinder);
+    }
+  }
+
+  @Test
+  public void testMissingMeasuresFallBackToGitBlame() throws Exception {
+    final GitBlameFallback gitBlameFallback = mock(GitBlameFallback.class);
+    when(gitBlameFallback.isEnabled()).thenReturn(true);
+    when(gitBlameFallback.blame(COMPONENT_KEY, 3, 5)).thenReturn(new GitBlameFallback.BlamedLine(4, AUTHOR2, DATE2.getTime(), "r"));
+    when(settings.getInt(IssueAssignPlugin.PROPERTY_BLAME_LINE_WINDOW)).thenReturn(2);
+    when(resourceFinder.find(COMPONENT_KEY)).thenReturn(resource);
+    when(measuresFinder.getMeasures(resource)).thenThrow(new MissingScmMeasureDataException());
+    when(issue.componentKey()).thenReturn(COMPONENT_KEY);
+    when(issue.line()).thenReturn(3);
+
+    testSubject = new Blame(resourceFinder, measuresFinder, null, settings, decoder, null, gitBlameFallback);
+
+    assertThat(testSubject.getScmAuthorForIssue(issue, false)).isEqualTo(AUTHOR2);
+    assertThat(testSubject.getCommitTimeForIssue(issue)).isEqualTo(DATE2.getTime());
+  }
+
+  @Test(expected = MissingScmMeasureDataException.class)
+  public void testMissingMeasuresWithoutGitBlame() throws Exception {
+    final GitBlameFallback gitBlameFallback = mock(GitBlameFallback.class);
+    when(gitBlameFallback.isEnabled()).thenReturn(true);
+    when(resourceFinder.find(COMPONENT_KEY)).thenReturn(resource);
+    when(measuresFinder.getMeasures(resource)).thenThrow(new MissingScmMeasureDataException());
+    when(issue.componentKey()).thenReturn(COMPONENT_KEY);
+    when(issue.line()).thenReturn(3);
+
+    testSubject = new Blame(resourceFinder, measuresFinder, null, settings, decoder, null, gitBlameFallback);
+
+    testSubject.getScmAuthorForIssue(issue, false);
+  }
+
+  @Test
+  public void testMissingMeasuresAreLookedUpOncePerResource() throws Exception {
+    final MissingScmMeasureDataException missing = new MissingScmMeasureDataException();
+    when(resourceFinder.find(COMPONENT_KEY)).thenReturn(resource);
+    when(measuresFinder.getMeasures(resource)).thenThrow(missing);
+    when(issue.componentKey()).thenReturn(COMPONENT_KEY);
+    when(issue.line()).thenReturn(1);
+
+    for (int i = 0; i < 3; i++) {
+      try {
+        testSubject.getScmAuthorForIssue(issue, false);
+        fail("Expected MissingScmMeasureDataException");
+      } catch (final MissingScmMeasureDataException e) {
+        assertThat(e).isSameAs(missing);
+      }
+    }
+
+    verify(resourceFinder, times(1)).find(COMPONENT_KEY);
+    verify(measuresFinder, times(1)).getMeasures(resource);
+  }
+
+  @Test
+  public void testMissingResourceIsLookedUpOncePerResource() throws Exception {
+    when(resourceFinder.find(COMPONENT_KEY)).thenThrow(new ResourceNotFoundException());
+    when(issue.componentKey()).thenReturn(COMPONENT_KEY);
+
+    for (int i = 0; i < 3; i++) {
+      try {
+        testSubject.getScmAuthorForIssue(issue, true);
+        fail("Expected ResourceNotFoundException");
+      } catch (final ResourceNotFoundException e) {
+        // expected
+      }
+    }
+
+    verify(resourceFinder, times(1)).find(COMPONENT_KEY);
+  }
+
+  @Test
+  public void testNoUniqueAuthorIsReportedOncePerResource() throws Exception {
+
+    final Map<Integer, String> authorMap = new HashMap<Integer, String>();
+    authorMap.put(1, AUTHOR1);
+    authorMap.put(2, AUTHOR2);
+
+    final Map<Integer, Date> lastCommitDateMap = new HashMap<Integer, Date>();
+    lastCommitDateMap.put(1, DATE1);
+    lastCommitDateMap.put(2, DATE1);
+
+    when(resourceFinder.find(COMPONENT_KEY)).thenReturn(resource);
+    when(measuresFinder.getMeasures(resource)).thenReturn(scmMeasures(authorMap, lastCommitDateMap));
+    when(issue.componentKey()).thenReturn(COMPONENT_KEY);
+
+    NoUniqueAuthorForLastCommitException first = null;
+    for (int i = 0; i < 3; i++) {
+      try {
+        testSubject.getScmAuthorForIssue(issue, true);
+        fail("Expected NoUniqueAuthorForLastCommitException");
+      } catch (final NoUniqueAuthorForLastCommitException e) {
+        if (first == null) {
+          first = e;
+        }
+        assertThat(e).isSameAs(first);
+      }
+    }
+  }
+
+  @Test
+  public void testNoUniqueAuthorFallsBackToTopContributor() throws Exception {
+
+    final Map<Integer, String> authorMap = new HashMap<Integer, String>();
+    authorMap.put(1, AUTHOR1);
+    authorMap.put(2, AUTHOR2);
+    authorMap.put(3, AUTHOR2);
+
+    final Map<Integer, Date> lastCommitDateMap = new HashMap<Integer, Date>();
+    lastCommitDateMap.put(1, DATE3);
+    lastCommitDateMap.put(2, DATE3);
+    lastCommitDateMap.put(3, DATE1);
+
+    when(settings.getBoolean(IssueAssignPlugin.PROPERTY_ASSIGN_AMBIGUOUS_TO_TOP_CONTRIBUTOR)).thenReturn(true);
+    when(resourceFinder.find(COMPONENT_KEY)).thenReturn(resource);
+    when(measuresFinder.getMeasures(resource)).thenReturn(scmMeasures(authorMap, lastCommitDateMap));
+    when(issue.componentKey()).thenReturn(COMPONENT_KEY);
+
+    assertThat(testSubject.getScmAuthorForIssue(issue, true)).isEqualTo(AUTHOR2);
+  }
+
   @Test(expected = NoUniqueAuthorForLastCommitException.class)
   public void testGetAuthorNoUniqueAuthorForLastCommit() throws Exception {
 
@@ -230,9 +512,7 @@ public class BlameTest {
     lastCommitDateMap.put(2, DATE1);
 
     when(resourceFinder.find(COMPONENT_KEY)).thenReturn(resource);
-    when(measuresFinder.getMeasures(resource)).thenReturn(scmMeasures);
-    when(scmMeasures.getAuthorsByLine()).thenReturn(authorMap);
-    when(scmMeasures.getLastCommitsByLine()).thenReturn(lastCommitDateMap);
+    when(measuresFinder.getMeasures(resource)).thenReturn(scmMeasures(authorMap, lastCommitDateMap));
 
     when(issue.componentKey()).thenReturn(COMPONENT_KEY);
     when(issue.line()).thenReturn(1);
@@ -240,4 +520,9 @@ public class BlameTest {
     final String author = testSubject.getScmAuthorForIssue(issue, true);
     assertThat(author).isEqualTo(AUTHOR3);
   }
+
+  private static ScmMeasures scmMeasures(final Map<Integer, String> authorMap, final Map<Integer, Date> lastCommitDateMap) {
+    return new ScmMeasures(COMPONENT_KEY, KeyValueFormat.formatIntString(authorMap),
+      KeyValueFormat.formatIntDateTime(lastCommitDateMap), "", new ScmSymbolTable());
+  }
 }
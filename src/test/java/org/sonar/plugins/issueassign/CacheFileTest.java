@@ -0,0 +1,75 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class CacheFileTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    final File file = new File(temp.newFolder(), "cache/records.txt");
+    final CacheFile classUnderTest = new CacheFile(file, "#test 1");
+    assertThat(classUnderTest.exists()).isFalse();
+
+    classUnderTest.write(Arrays.asList(
+      new String[] {"key\twith\ntabs\\", CacheFile.encode("-"), CacheFile.encode(null)},
+      new String[] {"other", CacheFile.encode(""), CacheFile.encode("a\r\nb")}));
+
+    assertThat(classUnderTest.exists()).isTrue();
+    final List<String[]> records = new CacheFile(file, "#test 1").read(3);
+    assertThat(records).hasSize(2);
+    assertThat(records.get(0)[0]).isEqualTo("key\twith\ntabs\\");
+    assertThat(CacheFile.decode(records.get(0)[1])).isEqualTo("-");
+    assertThat(CacheFile.decode(records.get(0)[2])).isNull();
+    assertThat(CacheFile.decode(records.get(1)[1])).isEmpty();
+    assertThat(CacheFile.decode(records.get(1)[2])).isEqualTo("a\r\nb");
+  }
+
+  @Test
+  public void testOtherHeader() throws Exception {
+    final File file = temp.newFile();
+    new CacheFile(file, "#test 1").write(Arrays.<String[]>asList(new String[] {"key", "value"}));
+
+    assertThat(new CacheFile(file, "#test 2").read(2)).isNull();
+  }
+
+  @Test
+  public void testSkipsRecordsOfAnotherLength() throws Exception {
+    final File file = temp.newFile();
+    new CacheFile(file, "#test 1").write(Arrays.asList(new String[] {"key", "value"}, new String[] {"key only"}));
+
+    final List<String[]> records = new CacheFile(file, "#test 1").read(2);
+
+    assertThat(records).hasSize(1);
+    assertThat(records.get(0)).containsOnly("key", "value");
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.config.Settings;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GitBlameFallbackTest {
+
+  private static final String REVISION1 = "199d7f6964c299f96883d382887d89d694b3f492";
+  private static final String REVISION2 = "2a4b6c8d0e2f4a6b8c0d2e4f6a8b0c2d4e6f8a0b";
+  private static final String UNCOMMITTED = "0000000000000000000000000000000000000000";
+  private static final String COMPONENT_KEY = "org:project:f.txt";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Mock
+  private ResourceFinder resourceFinder;
+  @Mock
+  private InputFile inputFile;
+
+  private GitBlameFallback classUnderTest;
+
+  @Before
+  public void setUp() {
+    final Settings settings = new Settings();
+    settings.setProperty(IssueAssignPlugin.PROPERTY_GIT_BLAME_FALLBACK, true);
+    this.classUnderTest = new GitBlameFallback(settings, resourceFinder);
+  }
+
+  @Test
+  public void testParsePorcelain() throws Exception {
+    final String porcelain = REVISION1 + " 1 1 1\n"
+      + "author X\n"
+      + "author-mail <x@y.z>\n"
+      + "author-time 1392209957\n"
+      + "author-tz +0000\n"
+      + "committer X\n"
+      + "committer-mail <x@y.z>\n"
+      + "committer-time 1392209958\n"
+      + "committer-tz +0000\n"
+      + "summary a summary long enough to put a space at column forty\n"
+      + "boundary\n"
+      + "filename f.txt\n"
+      + "\ta\n"
+      + UNCOMMITTED + " 2 2 1\n"
+      + "author Not Committed Yet\n"
+      + "author-mail <not.committed.yet>\n"
+      + "committer-time 1792209957\n"
+      + "filename f.txt\n"
+      + "\tB\n"
+      + REVISION2 + " 3 3 1\n"
+      + "author Y\n"
+      + "author-mail <y@y.z>\n"
+      + "committer-time 1492209957\n"
+      + "filename f.txt\n"
+      + "\tc\n"
+      + REVISION1 + " 4 4 1\n"
+      + "\td\n";
+
+    final List<GitBlameFallback.BlamedLine> lines = GitBlameFallback.parsePorcelain(new StringReader(porcelain));
+
+    assertThat(lines).hasSize(3);
+    assertThat(lines.get(0).getLine()).isEqualTo(1);
+    assertThat(lines.get(0).getAuthor()).isEqualTo("x@y.z");
+    assertThat(lines.get(0).getCommitTime()).isEqualTo(1392209958000L);
+    assertThat(lines.get(0).getRevision()).isEqualTo(REVISION1);
+    assertThat(lines.get(1).getLine()).isEqualTo(3);
+    assertThat(lines.get(1).getAuthor()).isEqualTo("y@y.z");
+    assertThat(lines.get(2).getLine()).isEqualTo(4);
+    assertThat(lines.get(2).getAuthor()).isEqualTo("x@y.z");
+  }
+
+  @Test
+  public void testBlameWorkingCopy() throws Exception {
+    final File repository = temp.newFolder();
+    assumeTrue(git(repository, "init", "-q") == 0);
+    final File file = new File(repository, "f.txt");
+    write(file, "a\nb\nc\n");
+    git(repository, "add", "f.txt");
+    assertThat(git(repository, "-c", "user.name=X", "-c", "user.email=x@y.z", "commit", "-q", "-m", "first")).isZero();
+    write(file, "a\nB\nc\nd\n");
+
+    when(resourceFinder.findInputFile(COMPONENT_KEY)).thenReturn(inputFile);
+    when(inputFile.file()).thenReturn(file);
+    when(inputFile.lines()).thenReturn(4);
+
+    final GitBlameFallback.BlamedLine blamedLine = classUnderTest.blame(COMPONENT_KEY, 1, 2);
+
+    assertThat(blamedLine.getLine()).isEqualTo(1);
+    assertThat(blamedLine.getAuthor()).isEqualTo("x@y.z");
+    assertThat(classUnderTest.blame(COMPONENT_KEY, 2, 2)).isNull();
+    assertThat(classUnderTest.blame(COMPONENT_KEY, 1, 10).getLine()).isEqualTo(1);
+    assertThat(classUnderTest.blame(COMPONENT_KEY, 3, 4).getLine()).isEqualTo(3);
+    verify(inputFile, times(1)).file();
+  }
+
+  @Test
+  public void testGitProcessTimesOut() throws Exception {
+    final File directory = temp.newFolder();
+    // a blame that never completes on its own
+    assumeTrue(new File("/bin/sh").canExecute());
+    when(resourceFinder.findInputFile(COMPONENT_KEY)).thenReturn(inputFile);
+    when(inputFile.file()).thenReturn(new File(directory, "f.txt"));
+    when(inputFile.lines()).thenReturn(1);
+    final Settings settings = new Settings();
+    settings.setProperty(IssueAssignPlugin.PROPERTY_GIT_BLAME_FALLBACK, true);
+    classUnderTest = new GitBlameFallback(settings, resourceFinder, 100, "/bin/sh", "-c", "exec sleep 60");
+    final long start = System.currentTimeMillis();
+
+    assertThat(classUnderTest.blame(COMPONENT_KEY, 1, 1)).isNull();
+    assertThat(classUnderTest.blame(COMPONENT_KEY, 1, 1)).isNull();
+
+    assertThat(System.currentTimeMillis() - start).isLessThan(30000L);
+    verify(inputFile, times(1)).file();
+  }
+
+  @Test
+  public void testFileOutsideModule() throws Exception {
+    assertThat(classUnderTest.blame(COMPONENT_KEY, 1, 1)).isNull();
+    assertThat(classUnderTest.blame(COMPONENT_KEY, 1, 1)).isNull();
+
+    verify(resourceFinder, times(1)).findInputFile(COMPONENT_KEY);
+  }
+
+  private static int git(final File directory, final String... arguments) throws Exception {
+    final String[] command = new String[arguments.length + 1];
+    command[0] = "git";
+    System.arraycopy(arguments, 0, command, 1, arguments.length);
+    try {
+      return new ProcessBuilder(command).directory(directory).redirectErrorStream(true).start().waitFor();
+    } catch (final IOException e) {
+      return -1;
+    }
+  }
+
+  private static void write(final File file, final String content) throws IOException {
+    final FileWriter writer = new FileWriter(file);
+    try {
+      writer.write(content);
+    } finally {
+      writer.close();
+    }
+  }
+}
@@ -20,6 +20,7 @@
 package org.sonar.plugins.issueassign;
 
 import org.junit.Test;
+import org.sonar.plugins.issueassign.measures.ScmSymbolTable;
 import org.sonar.plugins.issueassign.notification.*;
 
 import static org.fest.assertions.api.Assertions.assertThat;
@@ -30,8 +31,9 @@ public class IssueAssignPluginTest {
   public void testGetExtensions() throws Exception {
     final IssueAssignPlugin classUnderTest = new IssueAssignPlugin();
     assertThat(classUnderTest.getExtensions())
-      .hasSize(23)
+      .hasSize(47)
       .contains(IssueAssigner.class,
+        ScmSymbolTable.class,
         SendIssueNotificationsPostJob.class,
         MyNewIssuesEmailTemplate.class,
         MyNewIssuesNotificationDispatcher.class,
@@ -21,6 +21,7 @@ package org.sonar.plugins.issueassign;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.internal.util.reflection.Whitebox;
@@ -34,6 +35,7 @@ import org.sonar.api.user.UserFinder;
 import org.sonar.plugins.issueassign.exception.IssueAssignPluginException;
 import org.sonar.plugins.issueassign.util.DiagnosticLogger;
 
+import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -57,6 +59,8 @@ public class IssueAssignerTest {
   private SonarIndex sonarIndex;
   @Mock
   private DiagnosticLogger logger;
+  @Mock
+  private AssignmentCache assignmentCache;
 
   @InjectMocks
   private IssueAssigner testSubject;
@@ -84,6 +88,44 @@ public class IssueAssignerTest {
     verify(context, times(1)).assign(assignee);
   }
 
+  @Test
+  public void testOnIssueWithCachedDecision() throws Exception {
+
+    when(context.issue()).thenReturn(issue);
+    when(issue.componentKey()).thenReturn(COMPONENT_KEY);
+    when(settings.getBoolean(IssueAssignPlugin.PROPERTY_ENABLED)).thenReturn(true);
+    when(issue.key()).thenReturn(ISSUE_KEY);
+    when(assignmentCache.lookup(issue)).thenReturn(new AssignmentCache.Decision(1L, "login", "name"));
+
+    Whitebox.setInternalState(testSubject, "assign", assign);
+    testSubject.onIssue(context);
+
+    verifyZeroInteractions(blame, assign);
+    final ArgumentCaptor<User> user = ArgumentCaptor.forClass(User.class);
+    verify(context).assign(user.capture());
+    assertThat(user.getValue().login()).isEqualTo("login");
+    verify(assignmentCache).record(eq(issue), eq(1L), any(User.class));
+  }
+
+  @Test
+  public void testOnIssueWithScmAuthorRecordsDecision() throws Exception {
+
+    when(context.issue()).thenReturn(issue);
+    when(issue.componentKey()).thenReturn(COMPONENT_KEY);
+    when(settings.getBoolean(IssueAssignPlugin.PROPERTY_ENABLED)).thenReturn(true);
+    when(blame.getScmAuthorForIssue(issue, false)).thenReturn(SCM_AUTHOR);
+    when(settings.getString(IssueAssignPlugin.PROPERTY_ISSUE_CUTOFF_DATE)).thenReturn("01/01/1970");
+    when(blame.getCommitTimeForIssue(issue)).thenReturn(42L);
+    when(issue.key()).thenReturn(ISSUE_KEY);
+    when(assign.getAssignee(SCM_AUTHOR)).thenReturn(assignee);
+
+    Whitebox.setInternalState(testSubject, "blame", blame);
+    Whitebox.setInternalState(testSubject, "assign", assign);
+    testSubject.onIssue(context);
+
+    verify(assignmentCache).record(issue, 42L, assignee);
+  }
+
   @Test
   public void testOnIssueNotAssignable() {
 
@@ -171,4 +213,14 @@ public class IssueAssignerTest {
     verify(assign, times(1)).getAssignee();
     verify(context, times(1)).assign(assignee);
   }
+
+  @Test
+  public void testStopReleasesBlame() {
+    when(settings.getBoolean(IssueAssignPlugin.PROPERTY_ENABLED)).thenReturn(true);
+
+    testSubject.stop();
+
+    verify(blame).logCacheStatistics();
+    verify(blame).release();
+  }
 }
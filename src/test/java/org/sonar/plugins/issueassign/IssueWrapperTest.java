@@ -32,6 +32,7 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 
 import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -62,6 +63,15 @@ public class IssueWrapperTest {
         assertThat(this.testSubject.isAssignable()).isTrue();
     }
 
+    @Test
+    public void test_commit_time_not_loaded_without_cutoff_date() throws Exception {
+        when(this.issue.assignee()).thenReturn(null);
+
+        assertThat(this.testSubject.isAssignable()).isTrue();
+        assertThat(this.testSubject.getCommitTime()).isNull();
+        verifyZeroInteractions(this.blame);
+    }
+
     @Test
     public void test_new_issue_and_assign_only_new_configured() throws Exception {
       when(this.issue.isNew()).thenReturn(true);
@@ -105,7 +115,7 @@ public class IssueWrapperTest {
         Date issueCreationDate = df.parse(issueCreationDateText);
 
         when(settings.getString(IssueAssignPlugin.PROPERTY_ISSUE_CUTOFF_DATE)).thenReturn(cutoffDateText);
-        when(blame.getCommitDateForIssue(issue)).thenReturn(issueCreationDate);
+        when(blame.getCommitTimeForIssue(issue)).thenReturn(issueCreationDate.getTime());
         when(settings.getBoolean(IssueAssignPlugin.PROPERTY_ASSIGN_TO_LAST_COMMITTER)).thenReturn(true);
         when(issue.creationDate()).thenReturn(issueCreationDate);
 
@@ -122,7 +132,7 @@ public class IssueWrapperTest {
         Date issueCreationDate = df.parse(issueCreationDateText);
 
         when(settings.getString(IssueAssignPlugin.PROPERTY_ISSUE_CUTOFF_DATE)).thenReturn(cutoffDateText);
-        when(blame.getCommitDateForIssue(issue)).thenReturn(issueCreationDate);
+        when(blame.getCommitTimeForIssue(issue)).thenReturn(issueCreationDate.getTime());
         when(settings.getBoolean(IssueAssignPlugin.PROPERTY_ASSIGN_TO_LAST_COMMITTER)).thenReturn(true);
         when(issue.creationDate()).thenReturn(issueCreationDate);
 
@@ -139,7 +149,7 @@ public class IssueWrapperTest {
       Date issueCreationDate = df.parse(issueCreationDateText);
 
       when(settings.getString(IssueAssignPlugin.PROPERTY_ISSUE_CUTOFF_DATE)).thenReturn(cutoffDateText);
-      when(blame.getCommitDateForIssue(issue)).thenReturn(issueCreationDate);
+      when(blame.getCommitTimeForIssue(issue)).thenReturn(issueCreationDate.getTime());
       assertThat(this.testSubject.isAssignable()).isFalse();
         assertThat(this.testSubject.getNoAssignReason()).isEqualTo(NoAssignReason.BEFORE_CUTOFF_DATE);
     }
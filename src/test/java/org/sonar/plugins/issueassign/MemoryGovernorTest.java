@@ -0,0 +1,89 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MemoryGovernorTest {
+
+  private final Settings settings = new Settings();
+  private final Blame blame = mock(Blame.class);
+  private final Users users = mock(Users.class);
+
+  @Test
+  public void testRelieveShrinksCaches() {
+    when(blame.shrinkCache()).thenReturn(4096L);
+    when(users.releaseCache()).thenReturn(3);
+
+    new MemoryGovernor(settings, blame, users).relieve();
+
+    verify(blame).shrinkCache();
+    verify(users).releaseCache();
+  }
+
+  @Test
+  public void testDisabledByDefault() {
+    settings.setProperty(IssueAssignPlugin.PROPERTY_ENABLED, true);
+    final MemoryGovernor classUnderTest = new MemoryGovernor(settings, blame, users);
+
+    classUnderTest.start();
+
+    assertThat(classUnderTest.isArmed()).isFalse();
+    classUnderTest.stop();
+  }
+
+  @Test
+  public void testArmsAndRestoresHeapThresholds() {
+    final MemoryPoolMXBean pool = freeHeapPool();
+    assumeTrue(pool != null);
+    settings.setProperty(IssueAssignPlugin.PROPERTY_ENABLED, true);
+    settings.setProperty(IssueAssignPlugin.PROPERTY_MEMORY_THRESHOLD, 90);
+    final MemoryGovernor classUnderTest = new MemoryGovernor(settings, blame, users);
+
+    classUnderTest.start();
+    assertThat(classUnderTest.isArmed()).isTrue();
+    assertThat(pool.getCollectionUsageThreshold()).isGreaterThan(0);
+
+    classUnderTest.stop();
+    assertThat(classUnderTest.isArmed()).isFalse();
+    assertThat(pool.getCollectionUsageThreshold()).isZero();
+  }
+
+  private static MemoryPoolMXBean freeHeapPool() {
+    for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && pool.getUsage().getMax() > 0
+        && pool.getCollectionUsageThreshold() == 0) {
+        return pool;
+      }
+    }
+    return null;
+  }
+}
@@ -19,13 +19,20 @@
  */
 package org.sonar.plugins.issueassign;
 
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.batch.fs.FilePredicate;
+import org.sonar.api.batch.fs.FilePredicates;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.resources.File;
+import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
 import org.sonar.plugins.issueassign.exception.ResourceNotFoundException;
 
@@ -33,7 +40,12 @@ import java.util.Collection;
 import java.util.HashSet;
 
 import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -43,6 +55,16 @@ public class ResourceFinderTest {
   private SonarIndex sonarIndex;
   @Mock
   private File javaResource;
+  @Mock
+  private FileSystem fileSystem;
+  @Mock
+  private FilePredicates predicates;
+  @Mock
+  private FilePredicate predicate;
+  @Mock
+  private InputFile inputFile;
+  @Mock
+  private Project module;
 
   private static final String COMPONENT_KEY = "org:project:resource";
   private static final String RESOURCE_KEY = "resource";
@@ -119,4 +141,79 @@ public class ResourceFinderTest {
     final ResourceFinder classUnderTest = new ResourceFinder(sonarIndex);
     classUnderTest.find(NOT_FOUND_RESOURCE_KEY);
   }
+
+  @Test
+  public void testIndexIsBuiltOnce() throws ResourceNotFoundException {
+
+    final Resource otherResource = new File("other");
+    otherResource.setId(2);
+    otherResource.setEffectiveKey("org:project:other");
+    resources.add(otherResource);
+
+    when(sonarIndex.getResource(isA(File.class))).thenReturn(null);
+    when(sonarIndex.getResources()).thenReturn(resources);
+
+    final ResourceFinder classUnderTest = new ResourceFinder(sonarIndex);
+
+    assertThat(classUnderTest.find(RESOURCE_KEY)).isSameAs(nonJavaResource);
+    assertThat(classUnderTest.find("org:project:other")).isSameAs(otherResource);
+    try {
+      classUnderTest.find(NOT_FOUND_RESOURCE_KEY);
+    } catch (final ResourceNotFoundException e) {
+      // expected
+    }
+
+    verify(sonarIndex, times(1)).getResources();
+  }
+
+  @Test
+  public void testIndexIsNotBuiltForDirectHits() throws ResourceNotFoundException {
+
+    when(sonarIndex.getResource(isA(File.class))).thenReturn(javaResource);
+
+    final ResourceFinder classUnderTest = new ResourceFinder(sonarIndex);
+    classUnderTest.find(COMPONENT_KEY);
+
+    verify(sonarIndex, never()).getResources();
+  }
+
+  @Test
+  public void testFindThroughModuleFileSystem() throws ResourceNotFoundException {
+
+    final String branchModuleKey = "org:project:branch";
+    final String relativePath = "src/main/java/org/Foo.java";
+    when(module.getEffectiveKey()).thenReturn(branchModuleKey);
+    when(fileSystem.predicates()).thenReturn(predicates);
+    when(predicates.hasRelativePath(relativePath)).thenReturn(predicate);
+    when(fileSystem.inputFile(predicate)).thenReturn(inputFile);
+    when(sonarIndex.getResource(argThat(new BaseMatcher<Resource>() {
+      @Override
+      public boolean matches(final Object item) {
+        return item instanceof File && relativePath.equals(((File) item).getKey());
+      }
+
+      @Override
+      public void describeTo(final Description description) {
+        description.appendText(relativePath);
+      }
+    }))).thenReturn(javaResource);
+
+    final ResourceFinder classUnderTest = new ResourceFinder(sonarIndex, fileSystem, module);
+
+    assertThat(classUnderTest.find(branchModuleKey + ":" + relativePath)).isSameAs(javaResource);
+    assertThat(classUnderTest.find(branchModuleKey)).isSameAs(module);
+    verify(sonarIndex, never()).getResources();
+  }
+
+  @Test
+  public void testFindOutsideModuleFallsBackToIndex() throws ResourceNotFoundException {
+
+    when(module.getEffectiveKey()).thenReturn("org:other");
+    when(sonarIndex.getResource(any(Resource.class))).thenReturn(null);
+    when(sonarIndex.getResources()).thenReturn(resources);
+
+    final ResourceFinder classUnderTest = new ResourceFinder(sonarIndex, fileSystem, module);
+
+    assertThat(classUnderTest.find(RESOURCE_KEY)).isSameAs(nonJavaResource);
+  }
 }
@@ -0,0 +1,117 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.user.User;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ScmAuthorCacheTest {
+
+  private static final long HOUR = 60L * 60L * 1000L;
+  private static final long TTL = 24 * HOUR;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void testResolutionsSurviveAnalyses() throws Exception {
+    final File file = new File(temp.newFolder(), "cache/scm-authors.txt");
+    final User user = mock(User.class);
+    when(user.login()).thenReturn("jdoe");
+    when(user.name()).thenReturn("John Doe");
+
+    final ScmAuthorCache first = new ScmAuthorCache(file, TTL);
+    first.start();
+    first.put("rule\\t\nJohn Doe <jdoe@corp>", user);
+    first.put("\nnobody", null);
+    first.stop();
+
+    final ScmAuthorCache second = new ScmAuthorCache(file, TTL);
+    second.start();
+    final ScmAuthorCache.Entry found = second.get("rule\\t\nJohn Doe <jdoe@corp>");
+    assertThat(found.getUser().login()).isEqualTo("jdoe");
+    assertThat(found.getUser().name()).isEqualTo("John Doe");
+    assertThat(second.isStale(found)).isFalse();
+    assertThat(second.get("\nnobody").getUser()).isNull();
+    assertThat(second.get("\nsomeone else")).isNull();
+  }
+
+  @Test
+  public void testExpiredEntriesAreDropped() throws Exception {
+    final File file = temp.newFile();
+    final long now = System.currentTimeMillis();
+    write(file, "#scm-authors 1\n"
+      + "fresh\t=fresh\t-\t" + now + "\n"
+      + "stale\t=stale\t-\t" + (now - 20 * HOUR) + "\n"
+      + "expired\t=expired\t-\t" + (now - 25 * HOUR) + "\n");
+
+    final ScmAuthorCache classUnderTest = new ScmAuthorCache(file, TTL);
+    classUnderTest.start();
+
+    assertThat(classUnderTest.size()).isEqualTo(2);
+    assertThat(classUnderTest.isStale(classUnderTest.get("fresh"))).isFalse();
+    assertThat(classUnderTest.isStale(classUnderTest.get("stale"))).isTrue();
+    assertThat(classUnderTest.get("expired")).isNull();
+  }
+
+  @Test
+  public void testUnknownFormatIsIgnored() throws Exception {
+    final File file = temp.newFile();
+    write(file, "something else\nkey\t=login\t-\t" + System.currentTimeMillis() + "\n");
+
+    final ScmAuthorCache classUnderTest = new ScmAuthorCache(file, TTL);
+    classUnderTest.start();
+
+    assertThat(classUnderTest.size()).isZero();
+  }
+
+  @Test
+  public void testDisabledWithoutTtl() throws Exception {
+    final File file = new File(temp.newFolder(), "scm-authors.txt");
+    final ScmAuthorCache classUnderTest = new ScmAuthorCache(file, 0);
+    classUnderTest.start();
+    classUnderTest.put("key", null);
+    classUnderTest.stop();
+
+    assertThat(classUnderTest.isEnabled()).isFalse();
+    assertThat(classUnderTest.get("key")).isNull();
+    assertThat(file.exists()).isFalse();
+  }
+
+  private static void write(final File file, final String content) throws Exception {
+    final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      writer.write(content);
+    } finally {
+      writer.close();
+    }
+  }
+}
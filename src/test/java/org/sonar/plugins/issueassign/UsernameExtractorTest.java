@@ -0,0 +1,82 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class UsernameExtractorTest {
+
+  private static final UsernameExtractor EXTRACTOR = UsernameExtractor.compile(
+    "^[A-Z]+\\\\(\\w+)$", "(\\w+)@corp", "<(\\w+)@", "^(\\w+) (\\w+)$");
+
+  @Test
+  public void testReportsTheMatchingRule() {
+    assertThat(EXTRACTOR.getRuleCount()).isEqualTo(4);
+    assertExtraction("DOMAIN\\jdoe", 0, "jdoe");
+    assertExtraction("jdoe@corp", 1, "jdoe");
+    assertExtraction("John Doe <jdoe@mail.example.com>", 2, "jdoe");
+    assertExtraction("John Doe", 3, "John");
+  }
+
+  @Test
+  public void testFirstRuleInOrderWins() {
+    // the second rule matches further left, the first one still has priority
+    final UsernameExtractor extractor = UsernameExtractor.compile("\\.(\\d{6})$", "^(\\w+)\\.");
+
+    final UsernameExtractor.Extraction extraction = extractor.extract("joe.blow.123456");
+
+    assertThat(extraction.getRule()).isEqualTo(0);
+    assertThat(extraction.getUsername()).isEqualTo("123456");
+  }
+
+  @Test
+  public void testInvalidRulesAreSkipped() {
+    // a comma-separated split of ^(\w{2,8})@corp gives two invalid halves
+    final UsernameExtractor extractor = UsernameExtractor.compile("^(\\w{2", "8})@corp", "^(\\w{2,8})@corp");
+
+    assertThat(extractor.getRuleCount()).isEqualTo(1);
+    final UsernameExtractor.Extraction extraction = extractor.extract("jdoe@corp");
+    assertThat(extraction.getRule()).isEqualTo(2);
+    assertThat(extraction.getUsername()).isEqualTo("jdoe");
+  }
+
+  @Test
+  public void testNoMatch() {
+    assertThat(EXTRACTOR.extract("nobody-here")).isNull();
+  }
+
+  @Test
+  public void testRuleScopedFlags() {
+    final UsernameExtractor extractor = UsernameExtractor.compile("(?i)^corp\\\\(\\w+)$", "^(X)$");
+
+    assertThat(extractor.extract("CORP\\jdoe").getUsername()).isEqualTo("jdoe");
+    assertThat(extractor.extract("x")).isNull();
+    assertThat(UsernameExtractor.compile("^(X)$", "(?i)^corp\\\\(\\w+)$").extract("x")).isNull();
+  }
+
+  private static void assertExtraction(final String scmUserName, final int rule, final String username) {
+    final UsernameExtractor.Extraction extraction = EXTRACTOR.extract(scmUserName);
+    assertThat(extraction).isNotNull();
+    assertThat(extraction.getRule()).isEqualTo(rule);
+    assertThat(extraction.getUsername()).isEqualTo(username);
+  }
+}
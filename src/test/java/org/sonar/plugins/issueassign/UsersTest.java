@@ -22,6 +22,7 @@ package org.sonar.plugins.issueassign;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatcher;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
@@ -32,10 +33,20 @@ import org.sonar.api.user.UserQuery;
 import org.sonar.plugins.issueassign.exception.SonarUserNotFoundException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.isA;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -181,4 +192,252 @@ public class UsersTest {
 
     this.testSubject.getSonarUser(scmUserName);
   }
+
+  @Test
+  public void extractSonarUserWithModuleSettings() throws SonarUserNotFoundException {
+    final Settings moduleSettings = mock(Settings.class);
+    when(settings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME)).thenReturn(null);
+    when(moduleSettings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME)).thenReturn(".*\\..*\\.(\\d{6})");
+    when(userFinder.findByLogin("123456")).thenReturn(this.nonEmailUser);
+
+    final User user = this.testSubject.getSonarUser("joe.blow.123456", moduleSettings);
+    assertThat(user).isEqualTo(this.nonEmailUser);
+  }
+
+  @Test
+  public void releaseCacheDropsLookups() throws SonarUserNotFoundException {
+    when(settings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME)).thenReturn(null);
+    when(userFinder.find(isA(UserQuery.class))).thenReturn(this.sonarUsers);
+    when(emailUser.email()).thenReturn(EMAIL_USERNAME);
+
+    testSubject.getSonarUser(EMAIL_USERNAME);
+
+    assertThat(testSubject.releaseCache()).isEqualTo(2);
+    assertThat(testSubject.releaseCache()).isZero();
+  }
+
+  @Test
+  public void resolvesEachScmAuthorOnce() throws SonarUserNotFoundException {
+    when(settings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME)).thenReturn(null);
+    when(userFinder.findByLogin(NON_EMAIL_USERNAME)).thenReturn(this.nonEmailUser);
+
+    assertThat(testSubject.getSonarUser(NON_EMAIL_USERNAME)).isSameAs(this.nonEmailUser);
+    assertThat(testSubject.getSonarUser(NON_EMAIL_USERNAME)).isSameAs(this.nonEmailUser);
+
+    verify(userFinder, times(1)).findByLogin(NON_EMAIL_USERNAME);
+    assertThat(testSubject.getHits()).isEqualTo(1);
+    assertThat(testSubject.getMisses()).isEqualTo(1);
+  }
+
+  @Test
+  public void remembersUnknownScmAuthors() {
+    when(settings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME)).thenReturn(null);
+    when(userFinder.find(isA(UserQuery.class))).thenReturn(this.sonarUsers);
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        testSubject.getSonarUser(NON_MATCHING_EMAIL);
+        fail("expected SonarUserNotFoundException");
+      } catch (final SonarUserNotFoundException e) {
+        // expected
+      }
+    }
+
+    verify(userFinder, times(1)).findByLogin(NON_MATCHING_EMAIL);
+    verify(userFinder, times(1)).find(isA(UserQuery.class));
+    assertThat(testSubject.getHits()).isEqualTo(1);
+  }
+
+  @Test
+  public void extractSonarUserWithSeveralRules() throws SonarUserNotFoundException {
+    when(settings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME)).thenReturn("^(\\w{2,8})@corp$");
+    when(settings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_RULES)).thenReturn("^CORP\\\\(\\w+)$\n\n^(\\w+)@other$\n");
+    when(userFinder.findByLogin("jdoe")).thenReturn(this.nonEmailUser);
+    when(userFinder.findByLogin("asmith")).thenReturn(this.emailUser);
+    when(userFinder.findByLogin("bob")).thenReturn(this.emailUser);
+
+    assertThat(testSubject.getSonarUser("CORP\\jdoe")).isSameAs(this.nonEmailUser);
+    assertThat(testSubject.getSonarUser("asmith@other")).isSameAs(this.emailUser);
+    assertThat(testSubject.getSonarUser("bob@corp")).isSameAs(this.emailUser);
+  }
+
+  @Test
+  public void invalidRulesAreSkipped() throws SonarUserNotFoundException {
+    when(settings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME)).thenReturn("(unclosed");
+    when(userFinder.findByLogin("(unclosed")).thenReturn(null);
+    when(userFinder.findByLogin(NON_EMAIL_USERNAME)).thenReturn(this.nonEmailUser);
+
+    // without any valid rule the SCM username is used as it is
+    assertThat(testSubject.getSonarUser(NON_EMAIL_USERNAME)).isSameAs(this.nonEmailUser);
+  }
+
+  @Test
+  public void findSonarUserByEmailWithTargetedQuery() throws SonarUserNotFoundException {
+    when(settings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME)).thenReturn(null);
+    when(settings.getInt(IssueAssignPlugin.PROPERTY_EMAIL_INDEX_THRESHOLD)).thenReturn(10);
+    when(userFinder.find(argThat(new SearchText("username")))).thenReturn(this.sonarUsers);
+    when(emailUser.email()).thenReturn(EMAIL_USERNAME);
+
+    assertThat(testSubject.getSonarUser(EMAIL_USERNAME)).isSameAs(this.emailUser);
+    assertThat(testSubject.getSonarUser(EMBEDDED_EMAIL_USERNAME)).isSameAs(this.emailUser);
+
+    verify(userFinder, times(1)).find(isA(UserQuery.class));
+  }
+
+  @Test
+  public void targetedMissIsNotFoundBelowThreshold() throws SonarUserNotFoundException {
+    when(settings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME)).thenReturn(null);
+    when(settings.getInt(IssueAssignPlugin.PROPERTY_EMAIL_INDEX_THRESHOLD)).thenReturn(10);
+    // the search covers logins and names only, so it cannot find a user by "jsmith"
+    when(userFinder.find(argThat(new SearchText("jsmith")))).thenReturn(new ArrayList<User>());
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        testSubject.getSonarUser("jsmith@corp");
+        fail("expected SonarUserNotFoundException");
+      } catch (final SonarUserNotFoundException e) {
+        // expected
+      }
+    }
+
+    verify(userFinder, times(1)).find(argThat(new SearchText("jsmith")));
+    verify(userFinder, never()).find(argThat(new SearchText(null)));
+  }
+
+  @Test
+  public void missesOfTargetedQueriesAreNotPersisted() throws SonarUserNotFoundException {
+    final ScmAuthorCache authorCache = mock(ScmAuthorCache.class);
+    when(authorCache.isEnabled()).thenReturn(true);
+    when(settings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME)).thenReturn(null);
+    when(settings.getInt(IssueAssignPlugin.PROPERTY_EMAIL_INDEX_THRESHOLD)).thenReturn(10);
+    when(userFinder.find(argThat(new SearchText("username")))).thenReturn(new ArrayList<User>());
+
+    try {
+      new Users(userFinder, settings, authorCache).getSonarUser(EMAIL_USERNAME);
+      fail("expected SonarUserNotFoundException");
+    } catch (final SonarUserNotFoundException e) {
+      // expected
+    }
+
+    verify(authorCache, never()).put(anyString(), any(User.class));
+  }
+
+  @Test
+  public void targetedMissesCountTowardsThreshold() throws SonarUserNotFoundException {
+    final User john = mock(User.class);
+    when(john.login()).thenReturn("john");
+    when(john.email()).thenReturn("jsmith@corp");
+    when(settings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME)).thenReturn(null);
+    when(settings.getInt(IssueAssignPlugin.PROPERTY_EMAIL_INDEX_THRESHOLD)).thenReturn(1);
+    when(userFinder.find(argThat(new SearchText("jsmith")))).thenReturn(new ArrayList<User>());
+    when(userFinder.find(argThat(new SearchText(null)))).thenReturn(Arrays.asList(john));
+
+    try {
+      testSubject.getSonarUser("jsmith@corp");
+      fail("expected SonarUserNotFoundException");
+    } catch (final SonarUserNotFoundException e) {
+      // expected
+    }
+
+    // the miss reached the threshold, so the next email indexes all users and the missed author is resolved again
+    try {
+      testSubject.getSonarUser(NON_MATCHING_EMAIL);
+      fail("expected SonarUserNotFoundException");
+    } catch (final SonarUserNotFoundException e) {
+      // expected
+    }
+    assertThat(testSubject.getSonarUser("jsmith@corp")).isSameAs(john);
+
+    verify(userFinder, times(1)).find(argThat(new SearchText("jsmith")));
+    verify(userFinder, never()).find(argThat(new SearchText("dontmatch")));
+    verify(userFinder, times(1)).find(argThat(new SearchText(null)));
+  }
+
+  @Test
+  public void indexAllUsersPastThreshold() throws SonarUserNotFoundException {
+    when(settings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME)).thenReturn(null);
+    when(settings.getInt(IssueAssignPlugin.PROPERTY_EMAIL_INDEX_THRESHOLD)).thenReturn(1);
+    when(userFinder.find(argThat(new SearchText("username")))).thenReturn(this.sonarUsers);
+    when(userFinder.find(argThat(new SearchText(null)))).thenReturn(this.sonarUsers);
+    when(emailUser.email()).thenReturn(EMAIL_USERNAME);
+
+    assertThat(testSubject.getSonarUser(EMAIL_USERNAME)).isSameAs(this.emailUser);
+    try {
+      testSubject.getSonarUser(NON_MATCHING_EMAIL);
+      fail("expected SonarUserNotFoundException");
+    } catch (final SonarUserNotFoundException e) {
+      // expected
+    }
+
+    // past the threshold the second email goes straight to the full index
+    verify(userFinder, never()).find(argThat(new SearchText("dontmatch")));
+    verify(userFinder, times(1)).find(argThat(new SearchText(null)));
+  }
+
+  @Test
+  public void persistedResolutionSkipsUserFinder() throws SonarUserNotFoundException {
+    final ScmAuthorCache authorCache = mock(ScmAuthorCache.class);
+    when(authorCache.isEnabled()).thenReturn(true);
+    when(authorCache.get("\n" + NON_EMAIL_USERNAME)).thenReturn(new ScmAuthorCache.Entry("login", "name", 0L));
+    when(settings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME)).thenReturn(null);
+    final Users classUnderTest = new Users(userFinder, settings, authorCache);
+
+    assertThat(classUnderTest.getSonarUser(NON_EMAIL_USERNAME).login()).isEqualTo("login");
+
+    verifyZeroInteractions(userFinder);
+    assertThat(classUnderTest.getPersistentHits()).isEqualTo(1);
+  }
+
+  @Test
+  public void staleResolutionIsRevalidated() throws SonarUserNotFoundException {
+    final ScmAuthorCache authorCache = mock(ScmAuthorCache.class);
+    final ScmAuthorCache.Entry entry = new ScmAuthorCache.Entry(null, null, 0L);
+    when(authorCache.isEnabled()).thenReturn(true);
+    when(authorCache.get("\n" + NON_EMAIL_USERNAME)).thenReturn(entry);
+    when(authorCache.isStale(entry)).thenReturn(true);
+    when(settings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME)).thenReturn(null);
+    when(userFinder.findByLogin(NON_EMAIL_USERNAME)).thenReturn(this.nonEmailUser);
+    final Users classUnderTest = new Users(userFinder, settings, authorCache);
+
+    try {
+      classUnderTest.getSonarUser(NON_EMAIL_USERNAME);
+      fail("expected SonarUserNotFoundException");
+    } catch (final SonarUserNotFoundException e) {
+      // the previous analysis found no user
+    }
+    classUnderTest.stop();
+
+    verify(authorCache).put("\n" + NON_EMAIL_USERNAME, this.nonEmailUser);
+    assertThat(classUnderTest.getSonarUser(NON_EMAIL_USERNAME)).isSameAs(this.nonEmailUser);
+  }
+
+  @Test
+  public void resolutionIsPersisted() throws SonarUserNotFoundException {
+    final ScmAuthorCache authorCache = mock(ScmAuthorCache.class);
+    when(authorCache.isEnabled()).thenReturn(true);
+    when(settings.getString(IssueAssignPlugin.PROPERTY_EXTRACT_SONAR_USERNAME_FROM_SCM_USERNAME)).thenReturn(null);
+    when(userFinder.findByLogin(NON_EMAIL_USERNAME)).thenReturn(this.nonEmailUser);
+
+    new Users(userFinder, settings, authorCache).getSonarUser(NON_EMAIL_USERNAME);
+
+    verify(authorCache).put("\n" + NON_EMAIL_USERNAME, this.nonEmailUser);
+  }
+
+  private static final class SearchText extends ArgumentMatcher<UserQuery> {
+
+    private final String searchText;
+
+    SearchText(final String searchText) {
+      this.searchText = searchText;
+    }
+
+    @Override
+    public boolean matches(final Object argument) {
+      if (argument == null) {
+        return false;
+      }
+      final String actual = ((UserQuery) argument).searchText();
+      return this.searchText == null ? actual == null : this.searchText.equals(actual);
+    }
+  }
 }
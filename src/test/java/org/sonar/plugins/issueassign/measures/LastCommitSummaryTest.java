@@ -0,0 +1,80 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class LastCommitSummaryTest {
+
+  private static final String OLD_DATE = "2013-01-31T12:12:12-0800";
+  private static final String NEW_DATE = "2014-01-01T12:12:12-0800";
+  private static final String RESOURCE_KEY = "RESOURCE_KEY";
+
+  @Test
+  public void testUniqueLastCommitter() throws Exception {
+    final ScmMeasures scmMeasures = new ScmMeasures(RESOURCE_KEY,
+      "1=author1;2=author2;3=author2;4=author1",
+      "1=" + OLD_DATE + ";2=" + NEW_DATE + ";3=" + NEW_DATE + ";4=" + OLD_DATE, "", new ScmSymbolTable());
+
+    final LastCommitSummary classUnderTest = LastCommitSummary.of(scmMeasures);
+
+    assertThat(classUnderTest.hasCommits()).isTrue();
+    assertThat(classUnderTest.getLastCommitTime()).isEqualTo(scmMeasures.getLastCommitTime(2));
+    assertThat(classUnderTest.getLines()).isEqualTo(new int[] {2, 3});
+    assertThat(classUnderTest.hasUniqueAuthor()).isTrue();
+    assertThat(classUnderTest.getAuthor()).isEqualTo("author2");
+  }
+
+  @Test
+  public void testNoUniqueLastCommitter() throws Exception {
+    final ScmMeasures scmMeasures = new ScmMeasures(RESOURCE_KEY,
+      "1=author1;2=author2",
+      "1=" + NEW_DATE + ";2=" + NEW_DATE, "", new ScmSymbolTable());
+
+    final LastCommitSummary classUnderTest = LastCommitSummary.of(scmMeasures);
+
+    assertThat(classUnderTest.getLines()).isEqualTo(new int[] {1, 2});
+    assertThat(classUnderTest.hasUniqueAuthor()).isFalse();
+    assertThat(classUnderTest.getAuthor()).isNull();
+    assertThat(classUnderTest.getTopContributor()).isEqualTo("author1");
+  }
+
+  @Test
+  public void testTopContributor() throws Exception {
+    final ScmMeasures scmMeasures = new ScmMeasures(RESOURCE_KEY,
+      "1=author1;2=author2;3=author2;4=author3;5=author2;6=author1",
+      "1=" + NEW_DATE + ";2=" + OLD_DATE + ";3=" + OLD_DATE + ";4=" + NEW_DATE + ";5=" + OLD_DATE + ";6=" + OLD_DATE,
+      "", new ScmSymbolTable());
+
+    assertThat(LastCommitSummary.of(scmMeasures).getTopContributor()).isEqualTo("author2");
+  }
+
+  @Test
+  public void testNoCommits() throws Exception {
+    final LastCommitSummary classUnderTest = LastCommitSummary.of(new ScmMeasures(RESOURCE_KEY, "", "", "", new ScmSymbolTable()));
+
+    assertThat(classUnderTest.hasCommits()).isFalse();
+    assertThat(classUnderTest.getLines()).isEmpty();
+    assertThat(classUnderTest.getAuthor()).isNull();
+    assertThat(classUnderTest.getTopContributor()).isNull();
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class LazyLineLookupTest {
+
+  @Test
+  public void testFind() throws Exception {
+    final LazyLineLookup classUnderTest = new LazyLineLookup(measure(1, 100, 1));
+
+    assertThat(classUnderTest.acceptLookup()).isTrue();
+    assertThat(classUnderTest.find(1).value()).isEqualTo("author1");
+    assertThat(classUnderTest.find(33).value()).isEqualTo("author33");
+    assertThat(classUnderTest.find(64).value()).isEqualTo("author64");
+    assertThat(classUnderTest.find(65).value()).isEqualTo("author65");
+    assertThat(classUnderTest.find(100).value()).isEqualTo("author100");
+    assertThat(classUnderTest.find(0)).isNull();
+    assertThat(classUnderTest.find(101)).isNull();
+  }
+
+  @Test
+  public void testFindWithGaps() throws Exception {
+    final LazyLineLookup classUnderTest = new LazyLineLookup(measure(5, 500, 5));
+
+    assertThat(classUnderTest.acceptLookup()).isTrue();
+    assertThat(classUnderTest.find(1)).isNull();
+    assertThat(classUnderTest.find(5).value()).isEqualTo("author5");
+    assertThat(classUnderTest.find(162)).isNull();
+    assertThat(classUnderTest.find(165).value()).isEqualTo("author165");
+    assertThat(classUnderTest.find(500).value()).isEqualTo("author500");
+  }
+
+  @Test
+  public void testSwitchesToFullDecode() throws Exception {
+    final LazyLineLookup classUnderTest = new LazyLineLookup(measure(1, 10, 1));
+
+    for (int i = 0; i < LazyLineLookup.FULL_DECODE_THRESHOLD; i++) {
+      assertThat(classUnderTest.acceptLookup()).isTrue();
+    }
+    assertThat(classUnderTest.acceptLookup()).isFalse();
+  }
+
+  @Test
+  public void testRejectsUnorderedMeasure() throws Exception {
+    final LazyLineLookup classUnderTest = new LazyLineLookup("2=author2;1=author1");
+    assertThat(classUnderTest.acceptLookup()).isFalse();
+  }
+
+  private static String measure(final int from, final int to, final int step) {
+    final StringBuilder sb = new StringBuilder();
+    for (int line = from; line <= to; line += step) {
+      if (sb.length() > 0) {
+        sb.append(';');
+      }
+      sb.append(line).append("=author").append(line);
+    }
+    return sb.toString();
+  }
+}
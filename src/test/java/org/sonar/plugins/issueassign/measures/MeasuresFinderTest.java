@@ -24,12 +24,17 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.config.PropertyDefinitions;
+import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.resources.Resource;
+import org.sonar.plugins.issueassign.IssueAssignPlugin;
 import org.sonar.plugins.issueassign.exception.MissingScmMeasureDataException;
 
 import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -67,7 +72,7 @@ public class MeasuresFinderTest {
 
     when(this.resource.getEffectiveKey()).thenReturn(RESOURCE_EFFECTIVE_KEY);
 
-    final MeasuresFinder classUnderTest = new MeasuresFinder(sonarIndex);
+    final MeasuresFinder classUnderTest = new MeasuresFinder(sonarIndex, new ScmSymbolTable());
     final ScmMeasures scmMeasure = classUnderTest.getMeasures(resource);
 
     assertThat(scmMeasure).isNotNull();
@@ -81,7 +86,72 @@ public class MeasuresFinderTest {
     when(this.scmAuthorsByLineMeasure.getData()).thenReturn(null);
     when(this.resource.getEffectiveKey()).thenReturn(RESOURCE_EFFECTIVE_KEY);
 
-    final MeasuresFinder classUnderTest = new MeasuresFinder(sonarIndex);
+    final MeasuresFinder classUnderTest = new MeasuresFinder(sonarIndex, new ScmSymbolTable());
     classUnderTest.getMeasures(resource);
   }
+
+  @Test
+  public void testCapabilities() throws Exception {
+    final MeasuresFinder classUnderTest = new MeasuresFinder(sonarIndex, new ScmSymbolTable());
+
+    assertThat(classUnderTest.capabilities()).containsOnly(ScmDataSource.Capability.LINE, ScmDataSource.Capability.FILE,
+      ScmDataSource.Capability.RANGE);
+    assertThat(classUnderTest.capabilities()).isSameAs(classUnderTest.capabilities());
+  }
+
+  @Test
+  public void testLoadsOnlyAuthorsForLineAuthors() throws Exception {
+    when(this.sonarIndex.getMeasure(resource, CoreMetrics.SCM_AUTHORS_BY_LINE)).thenReturn(scmAuthorsByLineMeasure);
+    when(this.scmAuthorsByLineMeasure.getData()).thenReturn("1=author1");
+
+    final MeasuresFinder classUnderTest = new MeasuresFinder(sonarIndex, new ScmSymbolTable(), new Settings());
+    final ScmMeasures scmMeasures = classUnderTest.getMeasures(resource);
+
+    assertThat(scmMeasures.getAuthor(1)).isEqualTo("author1");
+    verify(this.sonarIndex, never()).getMeasure(resource, CoreMetrics.SCM_LAST_COMMIT_DATETIMES_BY_LINE);
+    verify(this.sonarIndex, never()).getMeasure(resource, CoreMetrics.SCM_REVISIONS_BY_LINE);
+  }
+
+  @Test
+  public void testDefaultSettingsLoadCommitDatesForBlamelessIssues() throws Exception {
+    when(this.sonarIndex.getMeasure(resource, CoreMetrics.SCM_AUTHORS_BY_LINE)).thenReturn(scmAuthorsByLineMeasure);
+    when(this.sonarIndex.getMeasure(resource, CoreMetrics.SCM_LAST_COMMIT_DATETIMES_BY_LINE)).thenReturn(scmLastCommitDateTimesByLineMeasure);
+    when(this.scmAuthorsByLineMeasure.getData()).thenReturn("1=author1");
+    when(this.scmLastCommitDateTimesByLineMeasure.getData()).thenReturn("1=2014-01-01T12:12:12-0800");
+    final Settings settings = new Settings(new PropertyDefinitions().addComponents(new IssueAssignPlugin().getExtensions()));
+
+    new MeasuresFinder(sonarIndex, new ScmSymbolTable(), settings).getMeasures(resource);
+
+    verify(this.sonarIndex).getMeasure(resource, CoreMetrics.SCM_LAST_COMMIT_DATETIMES_BY_LINE);
+    verify(this.sonarIndex, never()).getMeasure(resource, CoreMetrics.SCM_REVISIONS_BY_LINE);
+  }
+
+  @Test
+  public void testLoadsOnlyAuthorsWithoutBlamelessAssignment() throws Exception {
+    when(this.sonarIndex.getMeasure(resource, CoreMetrics.SCM_AUTHORS_BY_LINE)).thenReturn(scmAuthorsByLineMeasure);
+    when(this.scmAuthorsByLineMeasure.getData()).thenReturn("1=author1");
+    final Settings settings = new Settings(new PropertyDefinitions().addComponents(new IssueAssignPlugin().getExtensions()));
+    settings.setProperty(IssueAssignPlugin.PROPERTY_ASSIGN_BLAMELESS_TO_LAST_COMMITTER, false);
+
+    final ScmMeasures scmMeasures = new MeasuresFinder(sonarIndex, new ScmSymbolTable(), settings).getMeasures(resource);
+
+    assertThat(scmMeasures.getAuthor(1)).isEqualTo("author1");
+    verify(this.sonarIndex, never()).getMeasure(resource, CoreMetrics.SCM_LAST_COMMIT_DATETIMES_BY_LINE);
+  }
+
+  @Test
+  public void testLoadsCommitDatesForLastCommitter() throws Exception {
+    when(this.sonarIndex.getMeasure(resource, CoreMetrics.SCM_AUTHORS_BY_LINE)).thenReturn(scmAuthorsByLineMeasure);
+    when(this.sonarIndex.getMeasure(resource, CoreMetrics.SCM_LAST_COMMIT_DATETIMES_BY_LINE)).thenReturn(scmLastCommitDateTimesByLineMeasure);
+    when(this.scmAuthorsByLineMeasure.getData()).thenReturn("1=author1");
+    when(this.scmLastCommitDateTimesByLineMeasure.getData()).thenReturn("1=2014-01-01T12:12:12-0800");
+    final Settings settings = new Settings();
+    settings.setProperty(IssueAssignPlugin.PROPERTY_ASSIGN_TO_LAST_COMMITTER, true);
+
+    final MeasuresFinder classUnderTest = new MeasuresFinder(sonarIndex, new ScmSymbolTable(), settings);
+    final ScmMeasures scmMeasures = classUnderTest.getMeasures(resource);
+
+    assertThat(scmMeasures.getLastCommitTime(1)).isNotEqualTo(ScmMeasures.NO_COMMIT_TIME);
+    verify(this.sonarIndex, never()).getMeasure(resource, CoreMetrics.SCM_REVISIONS_BY_LINE);
+  }
 }
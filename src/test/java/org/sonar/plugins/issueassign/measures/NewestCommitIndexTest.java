@@ -0,0 +1,104 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class NewestCommitIndexTest {
+
+  private static final long BASE_TIME = 1388606732000L;
+  private static final long NONE = ScmMeasures.NO_COMMIT_TIME;
+
+  @Test
+  public void testNewestLineMatchesScan() throws Exception {
+    final long[] times = {BASE_TIME, BASE_TIME + 5000L, NONE, BASE_TIME - 1000L, BASE_TIME + 9000L,
+      BASE_TIME + 9000L, BASE_TIME, NONE, BASE_TIME + 2000L, BASE_TIME + 1000L, BASE_TIME + 3000L};
+    final NewestCommitIndex classUnderTest = new NewestCommitIndex(blame(times));
+
+    for (int from = 1; from <= times.length; from++) {
+      for (int to = from; to <= times.length; to++) {
+        assertThat(classUnderTest.newestLine(from, to)).isEqualTo(scan(times, from, to));
+      }
+    }
+  }
+
+  @Test
+  public void testPrefersLowestLineOnTies() throws Exception {
+    final NewestCommitIndex classUnderTest = new NewestCommitIndex(blame(new long[] {BASE_TIME, BASE_TIME, BASE_TIME}));
+
+    assertThat(classUnderTest.newestLine(2, 3)).isEqualTo(2);
+  }
+
+  @Test
+  public void testRangeWithoutScmData() throws Exception {
+    final NewestCommitIndex classUnderTest = new NewestCommitIndex(blame(new long[] {BASE_TIME, NONE, NONE}));
+
+    assertThat(classUnderTest.newestLine(2, 3)).isZero();
+    assertThat(classUnderTest.newestLine(4, 10)).isZero();
+    assertThat(classUnderTest.newestLine(0, 10)).isEqualTo(1);
+    assertThat(new NewestCommitIndex(blame(new long[0])).newestLine(1, 10)).isZero();
+  }
+
+  @Test
+  public void testRangesMatchScan() throws Exception {
+    final long[] times = {BASE_TIME, BASE_TIME, BASE_TIME, BASE_TIME + 5000L, BASE_TIME + 5000L, NONE, NONE,
+      BASE_TIME - 1000L, BASE_TIME - 1000L, BASE_TIME + 5000L, BASE_TIME + 5000L, BASE_TIME + 5000L};
+    final LineBlame ranges = RangeLineBlame.compact(blame(times));
+    assertThat(ranges).isInstanceOf(RangedLineBlame.class);
+    final NewestCommitIndex classUnderTest = new NewestCommitIndex(ranges);
+
+    for (int from = 0; from <= times.length + 1; from++) {
+      for (int to = from; to <= times.length + 1; to++) {
+        assertThat(classUnderTest.newestLine(from, to)).isEqualTo(scan(times, Math.max(from, 1),
+          Math.min(to, times.length)));
+      }
+    }
+  }
+
+  @Test
+  public void testRangesGetOneLeafEach() throws Exception {
+    final long[] times = new long[10000];
+    for (int i = 0; i < times.length; i++) {
+      times[i] = BASE_TIME + (i / 1000) * 1000L;
+    }
+
+    final NewestCommitIndex classUnderTest = new NewestCommitIndex(RangeLineBlame.compact(blame(times)));
+
+    assertThat(classUnderTest.estimatedBytes()).isEqualTo(MemorySizes.ofIntArray(20));
+    assertThat(classUnderTest.newestLine(2500, 5500)).isEqualTo(5001);
+    assertThat(classUnderTest.newestLine(5500, 5600)).isEqualTo(5500);
+  }
+
+  private static LineBlame blame(final long[] times) {
+    return new ColumnarLineBlame(new int[times.length], times, new int[times.length]);
+  }
+
+  private static int scan(final long[] times, final int from, final int to) {
+    int newest = 0;
+    for (int line = from; line <= to; line++) {
+      if (times[line - 1] != NONE && (newest == 0 || times[line - 1] > times[newest - 1])) {
+        newest = line;
+      }
+    }
+    return newest;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class RangeLineBlameTest {
+
+  private static final long BASE_TIME = 1388606732000L;
+
+  @Test
+  public void testCompactSingleCommitFile() throws Exception {
+    final int lines = 1000;
+    final int[] authors = new int[lines];
+    final long[] times = new long[lines];
+    final int[] revisions = new int[lines];
+    for (int i = 0; i < lines; i++) {
+      authors[i] = 1;
+      times[i] = BASE_TIME;
+      revisions[i] = 2;
+    }
+
+    final LineBlame compacted = RangeLineBlame.compact(new ColumnarLineBlame(authors, times, revisions));
+
+    assertThat(compacted).isInstanceOf(RangeLineBlame.class);
+    assertThat(((RangeLineBlame) compacted).rangeCount()).isEqualTo(1);
+    assertThat(compacted.lineCount()).isEqualTo(lines);
+    assertThat(compacted.authorId(1)).isEqualTo(1);
+    assertThat(compacted.authorId(lines)).isEqualTo(1);
+    assertThat(compacted.revisionId(500)).isEqualTo(2);
+    assertThat(compacted.commitTime(500)).isEqualTo(BASE_TIME);
+    assertThat(compacted.authorId(0)).isEqualTo(ScmSymbolTable.NO_SYMBOL);
+    assertThat(compacted.authorId(lines + 1)).isEqualTo(ScmSymbolTable.NO_SYMBOL);
+    assertThat(compacted.commitTime(lines + 1)).isEqualTo(ScmMeasures.NO_COMMIT_TIME);
+  }
+
+  @Test
+  public void testCompactMatchesColumns() throws Exception {
+    final int[] authors = {1, 1, 1, 3, 3, 3, 3, 1, 1, 0};
+    final long[] times = {BASE_TIME, BASE_TIME, BASE_TIME, BASE_TIME + 86400000L, BASE_TIME + 86400000L,
+      BASE_TIME + 86400000L, BASE_TIME + 86400000L, BASE_TIME - 5000L, BASE_TIME - 5000L, ScmMeasures.NO_COMMIT_TIME};
+    final int[] revisions = {2, 2, 2, 4, 4, 4, 4, 5, 5, 0};
+    final ColumnarLineBlame columns = new ColumnarLineBlame(authors, times, revisions);
+
+    final LineBlame compacted = RangeLineBlame.compact(columns);
+
+    assertThat(((RangeLineBlame) compacted).rangeCount()).isEqualTo(4);
+    for (int line = 0; line <= 11; line++) {
+      assertThat(compacted.authorId(line)).isEqualTo(columns.authorId(line));
+      assertThat(compacted.revisionId(line)).isEqualTo(columns.revisionId(line));
+      assertThat(compacted.commitTime(line)).isEqualTo(columns.commitTime(line));
+    }
+  }
+
+  @Test
+  public void testKeepsColumnsWhenRangesDoNotPayOff() throws Exception {
+    final int[] authors = {1, 2, 1, 2};
+    final long[] times = {BASE_TIME, BASE_TIME, BASE_TIME, BASE_TIME};
+    final int[] revisions = {1, 1, 1, 1};
+    final ColumnarLineBlame columns = new ColumnarLineBlame(authors, times, revisions);
+
+    assertThat(RangeLineBlame.compact(columns)).isSameAs(columns);
+  }
+
+  @Test
+  public void testKeepsColumnsForSubSecondTimes() throws Exception {
+    final ColumnarLineBlame columns = new ColumnarLineBlame(new int[] {1, 1}, new long[] {BASE_TIME + 1, BASE_TIME + 1}, new int[] {1, 1});
+
+    assertThat(RangeLineBlame.compact(columns)).isSameAs(columns);
+  }
+}
@@ -21,33 +21,20 @@ package org.sonar.plugins.issueassign.measures;
 
 import org.junit.Before;
 import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.mockito.Mock;
-import org.mockito.runners.MockitoJUnitRunner;
-import org.sonar.api.batch.DecoratorContext;
-import org.sonar.api.measures.CoreMetrics;
-import org.sonar.api.measures.Measure;
+import org.sonar.api.utils.KeyValueFormat;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.fest.assertions.api.Assertions.assertThat;
-import static org.mockito.Mockito.when;
 
-@RunWith(MockitoJUnitRunner.class)
 public class ScmMeasuresTest {
 
-  @Mock
-  private DecoratorContext decoratorContext;
-  @Mock
-  private Measure authorPerLineMeasure;
-  @Mock
-  private Measure lastCommitDateTimeByLine;
-  @Mock
-  private Measure revisionsByLine;
-
   private static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ssZ";
   private static final String DATE1 = "2013-01-31T12:12:12-0800";
   private static final String DATE2 = "2011-02-01T12:12:12-0800";
@@ -70,100 +57,204 @@ public class ScmMeasuresTest {
 
   @Before
   public void beforeTest() {
-    when(this.decoratorContext.getMeasure(CoreMetrics.SCM_AUTHORS_BY_LINE)).thenReturn(authorPerLineMeasure);
-    when(this.decoratorContext.getMeasure(CoreMetrics.SCM_LAST_COMMIT_DATETIMES_BY_LINE)).thenReturn(lastCommitDateTimeByLine);
-    when(this.decoratorContext.getMeasure(CoreMetrics.SCM_REVISIONS_BY_LINE)).thenReturn(revisionsByLine);
-
-    when(this.authorPerLineMeasure.getData()).thenReturn(AUTHOR_DATA);
-    when(this.lastCommitDateTimeByLine.getData()).thenReturn(COMMIT_DATA);
-    when(this.revisionsByLine.getData()).thenReturn(REVISION_DATA);
-
-    this.classUnderTest = new ScmMeasures(RESOURCE_KEY, AUTHOR_DATA, COMMIT_DATA, REVISION_DATA);
+    this.classUnderTest = new ScmMeasures(RESOURCE_KEY, AUTHOR_DATA, COMMIT_DATA, REVISION_DATA, new ScmSymbolTable());
   }
 
   @Test
-  public void testGetAuthorsByLine() throws Exception {
-    Map<Integer, String> mapData = this.classUnderTest.getAuthorsByLine();
-    assertThat(mapData).hasSize(3)
-      .containsKey(1).containsValue(AUTHOR1)
-      .containsKey(2).containsValue(AUTHOR2)
-      .containsKey(3).containsValue(AUTHOR3);
-
-    assertThat(mapData.get(1)).isEqualTo(AUTHOR1);
-    assertThat(mapData.get(2)).isEqualTo(AUTHOR2);
-    assertThat(mapData.get(3)).isEqualTo(AUTHOR3);
-
-    // repeat to test caching
+  public void testGetAuthor() throws Exception {
+    assertThat(this.classUnderTest.getAuthor(1)).isEqualTo(AUTHOR1);
+    assertThat(this.classUnderTest.getAuthor(2)).isEqualTo(AUTHOR2);
+    assertThat(this.classUnderTest.getAuthor(3)).isEqualTo(AUTHOR3);
+
+    // lines without data
+    assertThat(this.classUnderTest.getAuthor(0)).isNull();
+    assertThat(this.classUnderTest.getAuthor(4)).isNull();
+  }
 
-    mapData = this.classUnderTest.getAuthorsByLine();
+  @Test
+  public void testGetLastCommitTime() throws Exception {
+    final DateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
 
-    assertThat(mapData).hasSize(3)
-      .containsKey(1).containsValue(AUTHOR1)
-      .containsKey(2).containsValue(AUTHOR2)
-      .containsKey(3).containsValue(AUTHOR3);
+    assertThat(this.classUnderTest.getLastCommitTime(1)).isEqualTo(dateFormat.parse(DATE1).getTime());
+    assertThat(this.classUnderTest.getLastCommitTime(2)).isEqualTo(dateFormat.parse(DATE2).getTime());
+    assertThat(this.classUnderTest.getLastCommitTime(3)).isEqualTo(dateFormat.parse(DATE3).getTime());
+    assertThat(this.classUnderTest.getLastCommitTime(4)).isEqualTo(ScmMeasures.NO_COMMIT_TIME);
+    assertThat(this.classUnderTest.getLineCount()).isEqualTo(3);
+  }
 
-    assertThat(mapData.get(1)).isEqualTo(AUTHOR1);
-    assertThat(mapData.get(2)).isEqualTo(AUTHOR2);
-    assertThat(mapData.get(3)).isEqualTo(AUTHOR3);
+  @Test
+  public void testGetLastCommitTimeMatchesKeyValueFormat() throws Exception {
+    final String commitData = "1=1999-12-31T23:59:59+0000;2=2000-02-29T00:00:00+0530;3=1969-07-20T20:17:40-1130;5=2038-01-19T03:14:08+0000";
+    final Map<Integer, Date> expected = KeyValueFormat.parseIntDateTime(commitData);
+    final ScmMeasures scmMeasures = new ScmMeasures(RESOURCE_KEY, AUTHOR_DATA, commitData, REVISION_DATA, new ScmSymbolTable());
+
+    for (final Map.Entry<Integer, Date> entry : expected.entrySet()) {
+      assertThat(scmMeasures.getLastCommitTime(entry.getKey())).isEqualTo(entry.getValue().getTime());
+    }
+    assertThat(scmMeasures.getLastCommitTime(4)).isEqualTo(ScmMeasures.NO_COMMIT_TIME);
+    assertThat(scmMeasures.getLineCount()).isEqualTo(5);
   }
 
   @Test
-  public void testGetLastCommitsByLine() throws Exception {
-    Map<Integer, Date> mapData = this.classUnderTest.getLastCommitsByLine();
+  public void testGetAuthorWithEscapedValues() throws Exception {
+    final Map<Integer, String> authors = new HashMap<Integer, String>();
+    authors.put(1, "semi;colon");
+    authors.put(2, "equals=sign");
+    authors.put(3, "\"quoted\"");
 
-    final DateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
-    final Date date1 = dateFormat.parse(DATE1);
-    final Date date2 = dateFormat.parse(DATE2);
-    final Date date3 = dateFormat.parse(DATE3);
+    final ScmMeasures scmMeasures = new ScmMeasures(RESOURCE_KEY, KeyValueFormat.formatIntString(authors), COMMIT_DATA, REVISION_DATA, new ScmSymbolTable());
 
-    assertThat(mapData).hasSize(3)
-      .containsKey(1).containsValue(date1)
-      .containsKey(2).containsValue(date2)
-      .containsKey(3).containsValue(date3);
+    assertThat(scmMeasures.getAuthor(1)).isEqualTo(KeyValueFormat.parseIntString(KeyValueFormat.formatIntString(authors)).get(1));
+    assertThat(scmMeasures.getAuthor(2)).isEqualTo("equals=sign");
+    assertThat(scmMeasures.getAuthor(3)).isEqualTo(KeyValueFormat.parseIntString(KeyValueFormat.formatIntString(authors)).get(3));
+  }
 
-    assertThat(mapData.get(1)).isEqualTo(date1);
-    assertThat(mapData.get(2)).isEqualTo(date2);
-    assertThat(mapData.get(3)).isEqualTo(date3);
+  @Test
+  public void testGetRevision() throws Exception {
+    assertThat(this.classUnderTest.getRevision(1)).isEqualTo(REVISION1);
+    assertThat(this.classUnderTest.getRevision(2)).isEqualTo(REVISION2);
+    assertThat(this.classUnderTest.getRevision(3)).isEqualTo(REVISION3);
+    assertThat(this.classUnderTest.getRevision(4)).isNull();
+  }
 
-    // repeat to test caching
+  @Test
+  public void testGetNewestLine() throws Exception {
+    assertThat(this.classUnderTest.getNewestLine(1, 2)).isEqualTo(1);
+    assertThat(this.classUnderTest.getNewestLine(1, 3)).isEqualTo(3);
+    assertThat(this.classUnderTest.getNewestLine(2, 100)).isEqualTo(3);
+    assertThat(this.classUnderTest.getNewestLine(4, 100)).isZero();
+  }
 
-    mapData = this.classUnderTest.getLastCommitsByLine();
+  @Test
+  public void testSymbolsAreSharedBetweenFiles() throws Exception {
+    final ScmSymbolTable symbolTable = new ScmSymbolTable();
+    final ScmMeasures file1 = new ScmMeasures(RESOURCE_KEY, AUTHOR_DATA, COMMIT_DATA, REVISION_DATA, symbolTable);
+    final ScmMeasures file2 = new ScmMeasures(RESOURCE_KEY, "1=" + AUTHOR3 + ";2=" + AUTHOR3, COMMIT_DATA, REVISION_DATA, symbolTable);
+
+    assertThat(file1.getAuthorId(3)).isEqualTo(file2.getAuthorId(1));
+    assertThat(file2.getAuthorId(1)).isEqualTo(file2.getAuthorId(2));
+    assertThat(file2.getAuthor(2)).isEqualTo(AUTHOR3);
+    // single line lookups only intern the lines asked for
+    assertThat(symbolTable.size()).isEqualTo(1);
+  }
 
-    assertThat(mapData).hasSize(3)
-      .containsKey(1).containsValue(date1)
-      .containsKey(2).containsValue(date2)
-      .containsKey(3).containsValue(date3);
+  @Test
+  public void testLookupsSwitchToFullDecode() throws Exception {
+    final ScmSymbolTable symbolTable = new ScmSymbolTable();
+    final ScmMeasures scmMeasures = new ScmMeasures(RESOURCE_KEY, AUTHOR_DATA, COMMIT_DATA, REVISION_DATA, symbolTable);
+
+    for (int i = 0; i <= LazyLineLookup.FULL_DECODE_THRESHOLD; i++) {
+      assertThat(scmMeasures.getAuthor(1)).isEqualTo(AUTHOR1);
+    }
+
+    // a full decode interns every author and revision
+    assertThat(symbolTable.size()).isEqualTo(6);
+    assertThat(scmMeasures.getAuthor(2)).isEqualTo(AUTHOR2);
+    assertThat(scmMeasures.getAuthor(3)).isEqualTo(AUTHOR3);
+  }
 
-    assertThat(mapData.get(1)).isEqualTo(date1);
-    assertThat(mapData.get(2)).isEqualTo(date2);
-    assertThat(mapData.get(3)).isEqualTo(date3);
+  @Test
+  public void testRetainedBytesShrinkAfterDecode() throws Exception {
+    final StringBuilder authors = new StringBuilder();
+    final StringBuilder commits = new StringBuilder();
+    final StringBuilder revisions = new StringBuilder();
+    for (int line = 1; line <= 500; line++) {
+      authors.append(line).append('=').append(AUTHOR1).append(';');
+      commits.append(line).append('=').append(DATE1).append(';');
+      revisions.append(line).append("=0123456789abcdef0123456789abcdef01234567;");
+    }
+    final ScmMeasures scmMeasures = new ScmMeasures(RESOURCE_KEY, authors.toString(), commits.toString(),
+      revisions.toString(), new ScmSymbolTable());
+
+    final long rawBytes = scmMeasures.getRetainedBytes();
+    assertThat(scmMeasures.getLineCount()).isEqualTo(500);
+    final long decodedBytes = scmMeasures.getRetainedBytes();
+
+    assertThat(decodedBytes).isGreaterThan(0);
+    assertThat(decodedBytes).isLessThan(rawBytes / 100);
+    assertThat(scmMeasures.getRevision(250)).isEqualTo("0123456789abcdef0123456789abcdef01234567");
   }
 
   @Test
-  public void testGetRevisionsByLine() throws Exception {
-    Map<Integer, String> mapData = this.classUnderTest.getRevisionsByLine();
+  public void testFromLines() throws Exception {
+    final ScmMeasures expected = new ScmMeasures(RESOURCE_KEY, AUTHOR_DATA, COMMIT_DATA, REVISION_DATA, new ScmSymbolTable());
+
+    final ScmMeasures fromLines = ScmMeasures.fromLines(RESOURCE_KEY,
+      new String[] {AUTHOR1, AUTHOR2, AUTHOR3},
+      new long[] {expected.getLastCommitTime(1), expected.getLastCommitTime(2), expected.getLastCommitTime(3)},
+      new String[] {REVISION1, REVISION2, REVISION3}, new ScmSymbolTable());
+
+    assertThat(fromLines.getLineCount()).isEqualTo(3);
+    for (int line = 0; line <= 4; line++) {
+      assertThat(fromLines.getAuthor(line)).isEqualTo(expected.getAuthor(line));
+      assertThat(fromLines.getRevision(line)).isEqualTo(expected.getRevision(line));
+      assertThat(fromLines.getLastCommitTime(line)).isEqualTo(expected.getLastCommitTime(line));
+    }
+  }
 
-    assertThat(mapData).hasSize(3)
-      .containsKey(1).containsValue(REVISION1)
-      .containsKey(2).containsValue(REVISION2)
-      .containsKey(3).containsValue(REVISION3);
+  @Test
+  public void testLookupsDoNotWaitForDecode() throws Exception {
+    final CountDownLatch decoding = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ScmSymbolTable blockingTable = new ScmSymbolTable() {
+      @Override
+      public int intern(final String symbol) {
+        if (Thread.currentThread().getName().equals("decoder")) {
+          decoding.countDown();
+          try {
+            release.await(10, TimeUnit.SECONDS);
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        return super.intern(symbol);
+      }
+    };
+    final ScmMeasures measures = new ScmMeasures(RESOURCE_KEY, AUTHOR_DATA, COMMIT_DATA, REVISION_DATA, blockingTable);
+    final ScmMeasures expected = new ScmMeasures(RESOURCE_KEY, AUTHOR_DATA, COMMIT_DATA, REVISION_DATA,
+      new ScmSymbolTable());
+    final Thread decoder = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        measures.decode();
+      }
+    }, "decoder");
+    decoder.start();
+    assertThat(decoding.await(10, TimeUnit.SECONDS)).isTrue();
+
+    // served from the raw measures while the decoder is stuck in the middle of the file
+    final long start = System.currentTimeMillis();
+    assertThat(measures.getLastCommitTime(2)).isEqualTo(expected.getLastCommitTime(2));
+    assertThat(measures.getAuthor(3)).isEqualTo(AUTHOR3);
+    assertThat(System.currentTimeMillis() - start).isLessThan(5000L);
+
+    release.countDown();
+    decoder.join(10000);
+    assertThat(measures.getAuthor(1)).isEqualTo(AUTHOR1);
+    assertThat(measures.getNewestLine(1, 3)).isEqualTo(3);
+  }
 
-    assertThat(mapData.get(1)).isEqualTo(REVISION1);
-    assertThat(mapData.get(2)).isEqualTo(REVISION2);
-    assertThat(mapData.get(3)).isEqualTo(REVISION3);
+  @Test
+  public void testFromLinesWithoutRevisions() throws Exception {
+    final ScmSymbolTable symbolTable = new ScmSymbolTable();
 
-    // repeat to test caching
+    final ScmMeasures fromLines = ScmMeasures.fromLines(RESOURCE_KEY, new String[] {AUTHOR1, AUTHOR2},
+      new long[] {1L, 2L}, null, symbolTable);
 
-    mapData = this.classUnderTest.getRevisionsByLine();
+    assertThat(fromLines.getLineCount()).isEqualTo(2);
+    assertThat(fromLines.getAuthor(2)).isEqualTo(AUTHOR2);
+    assertThat(fromLines.getLastCommitTime(2)).isEqualTo(2L);
+    assertThat(fromLines.getRevision(2)).isNull();
+    assertThat(fromLines.getNewestLine(1, 2)).isEqualTo(2);
+  }
 
-    assertThat(mapData).hasSize(3)
-      .containsKey(1).containsValue(REVISION1)
-      .containsKey(2).containsValue(REVISION2)
-      .containsKey(3).containsValue(REVISION3);
+  @Test
+  public void testWithNoData() throws Exception {
+    final ScmMeasures scmMeasures = new ScmMeasures(RESOURCE_KEY, "", "", "", new ScmSymbolTable());
 
-    assertThat(mapData.get(1)).isEqualTo(REVISION1);
-    assertThat(mapData.get(2)).isEqualTo(REVISION2);
-    assertThat(mapData.get(3)).isEqualTo(REVISION3);
+    assertThat(scmMeasures.getAuthor(1)).isNull();
+    assertThat(scmMeasures.getLastCommitTime(1)).isEqualTo(ScmMeasures.NO_COMMIT_TIME);
+    assertThat(scmMeasures.getLineCount()).isZero();
   }
 
   @Test
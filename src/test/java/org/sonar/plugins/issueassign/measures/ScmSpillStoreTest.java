@@ -0,0 +1,173 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class ScmSpillStoreTest {
+
+  private static final String OLD_DATE = "2013-01-31T12:12:12-0800";
+  private static final String NEW_DATE = "2014-01-01T12:12:12-0800";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void testSpilledMeasuresMatchDecoded() throws Exception {
+    final File workDir = temp.newFolder();
+    final ScmSpillStore classUnderTest = new ScmSpillStore(true, workDir);
+    final ScmSymbolTable symbolTable = new ScmSymbolTable();
+    final String authors = "1=author1;2=author2;3=author2;5=author1";
+    final String dates = "1=" + OLD_DATE + ";2=" + NEW_DATE + ";3=" + NEW_DATE + ";5=" + OLD_DATE;
+    final String revisions = "1=r1;2=r2;3=r2;5=r1";
+    final ScmMeasures expected = new ScmMeasures("file", authors, dates, revisions, symbolTable);
+    final ScmMeasures spilled = new ScmMeasures("file", authors, dates, revisions, symbolTable);
+
+    assertThat(spilled.spillTo(classUnderTest)).isTrue();
+
+    assertThat(spilled.isSpilled()).isTrue();
+    assertThat(spilled.getRetainedBytes()).isLessThan(expected.getRetainedBytes());
+    assertThat(spilled.getLineCount()).isEqualTo(expected.getLineCount());
+    for (int line = 0; line <= 6; line++) {
+      assertThat(spilled.getAuthor(line)).isEqualTo(expected.getAuthor(line));
+      assertThat(spilled.getRevision(line)).isEqualTo(expected.getRevision(line));
+      assertThat(spilled.getLastCommitTime(line)).isEqualTo(expected.getLastCommitTime(line));
+    }
+    assertThat(spilled.getNewestLine(1, 5)).isEqualTo(2);
+    assertThat(workDir.list()).hasSize(1);
+  }
+
+  @Test
+  public void testReleasedRegionsAreReused() throws Exception {
+    final ScmSpillStore classUnderTest = new ScmSpillStore(true, temp.newFolder());
+    final ScmSymbolTable symbolTable = new ScmSymbolTable();
+    final ScmMeasures first = new ScmMeasures("file1", "1=author1;2=author2", "1=" + OLD_DATE + ";2=" + NEW_DATE, "",
+      symbolTable);
+    first.spillTo(classUnderTest);
+    final long fileLength = classUnderTest.getFileLength();
+    assertThat(classUnderTest.getLiveBytes()).isEqualTo(2 * MappedLineBlame.BYTES_PER_ENTRY);
+
+    first.releaseSpilled(classUnderTest);
+
+    assertThat(classUnderTest.getLiveBytes()).isZero();
+    assertThat(first.isSpilled()).isFalse();
+    assertThat(first.getAuthor(1)).isNull();
+
+    for (int i = 0; i < 100; i++) {
+      final ScmMeasures next = new ScmMeasures("file" + i, "1=author" + i, "1=" + NEW_DATE, "", symbolTable);
+      assertThat(next.spillTo(classUnderTest)).isTrue();
+      assertThat(next.getAuthor(1)).isEqualTo("author" + i);
+      assertThat(next.getLastCommitTime(1)).isEqualTo(new ScmMeasures("x", "", "1=" + NEW_DATE, "", symbolTable)
+        .getLastCommitTime(1));
+      next.releaseSpilled(classUnderTest);
+    }
+
+    assertThat(classUnderTest.getLiveBytes()).isZero();
+    assertThat(classUnderTest.getFileLength()).isEqualTo(fileLength);
+  }
+
+  @Test
+  public void testRangesAreSpilledAsRanges() throws Exception {
+    final ScmSpillStore classUnderTest = new ScmSpillStore(true, temp.newFolder());
+    final StringBuilder authors = new StringBuilder();
+    final StringBuilder dates = new StringBuilder();
+    for (int line = 1; line <= 1000; line++) {
+      final boolean old = line > 400 && line <= 700;
+      authors.append(line).append('=').append(old ? "author1" : "author2").append(';');
+      dates.append(line).append('=').append(old ? OLD_DATE : NEW_DATE).append(';');
+    }
+    final ScmSymbolTable symbolTable = new ScmSymbolTable();
+    final ScmMeasures expected = new ScmMeasures("file", authors.toString(), dates.toString(), "", symbolTable);
+    final ScmMeasures spilled = new ScmMeasures("file", authors.toString(), dates.toString(), "", symbolTable);
+
+    assertThat(spilled.spillTo(classUnderTest)).isTrue();
+
+    assertThat(classUnderTest.getLiveBytes())
+      .isEqualTo(3 * (MappedLineBlame.BYTES_PER_ENTRY + MappedLineBlame.BYTES_PER_RANGE_START));
+    for (int line = 0; line <= 1001; line++) {
+      assertThat(spilled.getAuthor(line)).isEqualTo(expected.getAuthor(line));
+      assertThat(spilled.getLastCommitTime(line)).isEqualTo(expected.getLastCommitTime(line));
+    }
+    assertThat(spilled.getNewestLine(450, 800)).isEqualTo(701);
+    assertThat(spilled.getNewestLine(450, 650)).isEqualTo(450);
+  }
+
+  @Test
+  public void testAdjacentReleasedRegionsAreMerged() throws Exception {
+    final ScmSpillStore classUnderTest = new ScmSpillStore(true, temp.newFolder());
+    final MappedLineBlame first = (MappedLineBlame) classUnderTest.write(lines(2));
+    final MappedLineBlame second = (MappedLineBlame) classUnderTest.write(lines(2));
+    final MappedLineBlame third = (MappedLineBlame) classUnderTest.write(lines(2));
+
+    classUnderTest.release(second);
+    classUnderTest.release(first);
+    final MappedLineBlame merged = (MappedLineBlame) classUnderTest.write(lines(4));
+
+    assertThat(merged.offset()).isEqualTo(first.offset());
+    assertThat(merged.commitTime(4)).isEqualTo(4000L);
+
+    classUnderTest.release(merged);
+    classUnderTest.release(third);
+    final MappedLineBlame tail = (MappedLineBlame) classUnderTest.write(lines(10));
+
+    assertThat(tail.offset()).isEqualTo(first.offset());
+    assertThat(classUnderTest.getLiveBytes()).isEqualTo(10 * MappedLineBlame.BYTES_PER_ENTRY);
+  }
+
+  @Test
+  public void testStopDeletesTheSpillFile() throws Exception {
+    final File workDir = temp.newFolder();
+    final ScmSpillStore classUnderTest = new ScmSpillStore(true, workDir);
+    new ScmMeasures("file", "1=author1", "1=" + OLD_DATE, "", new ScmSymbolTable()).spillTo(classUnderTest);
+    assertThat(classUnderTest.getFileLength()).isGreaterThan(0);
+
+    classUnderTest.stop();
+
+    assertThat(classUnderTest.getFileLength()).isZero();
+    assertThat(workDir.list()).isEmpty();
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    final File workDir = temp.newFolder();
+    final ScmSpillStore classUnderTest = new ScmSpillStore(false, workDir);
+    final ScmMeasures measures = new ScmMeasures("file", "1=author1", "1=" + OLD_DATE, "", new ScmSymbolTable());
+
+    assertThat(classUnderTest.isEnabled()).isFalse();
+    assertThat(measures.spillTo(classUnderTest)).isFalse();
+    assertThat(measures.getAuthor(1)).isEqualTo("author1");
+    assertThat(workDir.list()).isEmpty();
+  }
+
+  // every line committed at a different time, so that the blame is not run-length encoded
+  private static LineBlame lines(final int lineCount) {
+    final long[] times = new long[lineCount];
+    for (int i = 0; i < lineCount; i++) {
+      times[i] = (i + 1) * 1000L;
+    }
+    return new ColumnarLineBlame(new int[lineCount], times, new int[lineCount]);
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * SonarQube Issue Assign Plugin
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.issueassign.measures;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class ScmSymbolTableTest {
+
+  private final ScmSymbolTable classUnderTest = new ScmSymbolTable();
+
+  @Test
+  public void testIntern() throws Exception {
+    final int id1 = this.classUnderTest.intern("author1");
+    final int id2 = this.classUnderTest.intern("author2");
+
+    assertThat(id1).isNotEqualTo(ScmSymbolTable.NO_SYMBOL);
+    assertThat(id2).isNotEqualTo(id1);
+    assertThat(this.classUnderTest.intern(new String("author1"))).isEqualTo(id1);
+    assertThat(this.classUnderTest.symbol(id1)).isEqualTo("author1");
+    assertThat(this.classUnderTest.symbol(id2)).isEqualTo("author2");
+    assertThat(this.classUnderTest.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void testInternNull() throws Exception {
+    assertThat(this.classUnderTest.intern(null)).isEqualTo(ScmSymbolTable.NO_SYMBOL);
+    assertThat(this.classUnderTest.symbol(ScmSymbolTable.NO_SYMBOL)).isNull();
+    assertThat(this.classUnderTest.symbol(42)).isNull();
+  }
+
+  @Test
+  public void testGrow() throws Exception {
+    for (int i = 0; i < 1000; i++) {
+      this.classUnderTest.intern("revision" + i);
+    }
+    assertThat(this.classUnderTest.size()).isEqualTo(1000);
+    assertThat(this.classUnderTest.symbol(this.classUnderTest.intern("revision999"))).isEqualTo("revision999");
+  }
+
+  @Test
+  public void testSha1RevisionsArePacked() throws Exception {
+    final String revision = "0123456789abcdef0123456789abcdef01234567";
+    final String upperCaseRevision = "0123456789ABCDEF0123456789ABCDEF01234567";
+
+    final int id = this.classUnderTest.intern(revision);
+    final int upperCaseId = this.classUnderTest.intern(upperCaseRevision);
+
+    assertThat(this.classUnderTest.intern(new String(revision))).isEqualTo(id);
+    assertThat(upperCaseId).isNotEqualTo(id);
+    assertThat(this.classUnderTest.symbol(id)).isEqualTo(revision);
+    assertThat(this.classUnderTest.symbol(upperCaseId)).isEqualTo(upperCaseRevision);
+  }
+
+  @Test
+  public void testEstimatedBytes() throws Exception {
+    final long empty = this.classUnderTest.estimatedBytes();
+    this.classUnderTest.intern("0123456789abcdef0123456789abcdef01234567");
+    final long packed = this.classUnderTest.estimatedBytes() - empty;
+    this.classUnderTest.intern("0123456789ABCDEF0123456789ABCDEF01234567");
+    final long unpacked = this.classUnderTest.estimatedBytes() - empty - packed;
+
+    assertThat(packed).isGreaterThan(0);
+    assertThat(packed).isLessThan(unpacked);
+  }
+}